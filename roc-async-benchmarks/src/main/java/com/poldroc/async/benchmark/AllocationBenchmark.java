@@ -0,0 +1,61 @@
+package com.poldroc.async.benchmark;
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.wrapper.WorkerWrapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 稳定状态下重复执行同一个模板的分配量
+ * <p>
+ * 运行时加上 -prof gc，关注 gc.alloc.rate.norm：direct 下应接近 0 B/op，
+ * fixed 下只剩线程池自身（队列节点等）的分配
+ * <pre>
+ *     0 --- 1 ---
+ *       \        \
+ *         - 2 --- 4
+ *       /        /
+ *     3 ---------
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AllocationBenchmark {
+
+    @Param({"direct", "fixed"})
+    public String executor;
+
+    private ExecutorService executorService;
+
+    private List<WorkerWrapper> roots;
+
+    @Setup
+    public void setup() {
+        executorService = ExecutorChoice.create(executor);
+        NoopWorker worker = new NoopWorker();
+        WorkerWrapper<Integer, Integer> w4 = new WorkerWrapper.Builder<Integer, Integer>().worker(worker).param(4).build();
+        WorkerWrapper<Integer, Integer> w2 = new WorkerWrapper.Builder<Integer, Integer>().worker(worker).param(2).next(w4).build();
+        WorkerWrapper<Integer, Integer> w1 = new WorkerWrapper.Builder<Integer, Integer>().worker(worker).param(1).next(w4).build();
+        WorkerWrapper<Integer, Integer> w0 = new WorkerWrapper.Builder<Integer, Integer>().worker(worker).param(0).next(w1, w2).build();
+        WorkerWrapper<Integer, Integer> w3 = new WorkerWrapper.Builder<Integer, Integer>().worker(worker).param(3).next(w2).build();
+        roots = Arrays.asList(w0, w3);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdown();
+    }
+
+    @Benchmark
+    public boolean execute() throws Exception {
+        return Async.beginWork(1000, executorService, roots);
+    }
+}
@@ -0,0 +1,74 @@
+package com.poldroc.async.benchmark;
+
+import com.poldroc.async.timer.CachedClock;
+import com.poldroc.async.timer.DeadlineClock;
+import com.poldroc.async.timer.MonotonicClock;
+import com.poldroc.async.timer.SystemClock;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 64个线程同时读时钟的开销
+ * <ul>
+ *     <li>systemClock：原来的SystemClock，后台线程每毫秒写一次AtomicLong，墙上时间</li>
+ *     <li>currentTimeMillis：直接读墙上时间</li>
+ *     <li>monotonic：直接读nanoTime，引擎默认</li>
+ *     <li>cached：只在执行期间走时的CachedClock，整个测量期间保持一个执行进行中</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(64)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@SuppressWarnings("deprecation")
+public class ClockBenchmark {
+
+    @Param({"systemClock", "currentTimeMillis", "monotonic", "cached"})
+    public String clock;
+
+    private DeadlineClock deadlineClock;
+
+    @Setup
+    public void setup() {
+        switch (clock) {
+            case "systemClock":
+                deadlineClock = SystemClock::now;
+                break;
+            case "currentTimeMillis":
+                deadlineClock = System::currentTimeMillis;
+                break;
+            case "monotonic":
+                deadlineClock = MonotonicClock.INSTANCE;
+                break;
+            case "cached":
+                deadlineClock = new CachedClock(1, TimeUnit.MILLISECONDS);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown clock " + clock);
+        }
+        deadlineClock.executionStarted();
+    }
+
+    @TearDown
+    public void tearDown() {
+        deadlineClock.executionFinished();
+    }
+
+    @Benchmark
+    public long read() {
+        return deadlineClock.nanoTime();
+    }
+
+    /**
+     * 一次wrapper执行里读两次时钟求耗时
+     */
+    @Benchmark
+    public long elapsed() {
+        long begin = deadlineClock.nanoTime();
+        return deadlineClock.nanoTime() - begin;
+    }
+}
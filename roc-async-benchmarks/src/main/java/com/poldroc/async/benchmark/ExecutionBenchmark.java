@@ -0,0 +1,62 @@
+package com.poldroc.async.benchmark;
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.wrapper.WorkerWrapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不同图形状、不同线程池下一次完整执行的吞吐量和耗时分布
+ * <p>
+ * Throughput 给出每秒执行次数，SampleTime 给出单次执行耗时的分位数，
+ * 加上 -prof gc 可以同时得到每次执行的分配量。例如：
+ * <pre>
+ *     java -jar target/benchmarks.jar ExecutionBenchmark -p shape=diamond,randomDag -p executor=fixed -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutionBenchmark {
+
+    @Param({"chain", "fanOut", "fanIn", "diamond", "randomDag", "deep"})
+    public String shape;
+
+    @Param({"16"})
+    public int size;
+
+    @Param({"direct", "fixed", "cached", "forkJoin"})
+    public String executor;
+
+    /**
+     * 每个worker消耗的CPU，见Blackhole.consumeCPU
+     */
+    @Param({"0", "100"})
+    public long tokens;
+
+    private ExecutorService executorService;
+
+    private List<WorkerWrapper> roots;
+
+    @Setup
+    public void setup() {
+        executorService = ExecutorChoice.create(executor);
+        roots = GraphShapes.create(shape, size, new NoopWorker(tokens));
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdown();
+    }
+
+    @Benchmark
+    public boolean execute() throws Exception {
+        return Async.beginWork(10_000, executorService, roots);
+    }
+}
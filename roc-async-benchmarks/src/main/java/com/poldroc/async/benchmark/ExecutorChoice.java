@@ -0,0 +1,33 @@
+package com.poldroc.async.benchmark;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 基准测试中可选的线程池
+ */
+public final class ExecutorChoice {
+
+    private ExecutorChoice() {
+    }
+
+    /**
+     * @param name direct / fixed / cached / forkJoin
+     */
+    public static ExecutorService create(String name) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        switch (name) {
+            case "direct":
+                return new DirectExecutorService();
+            case "fixed":
+                return Executors.newFixedThreadPool(cores);
+            case "cached":
+                return Executors.newCachedThreadPool();
+            case "forkJoin":
+                return new ForkJoinPool(cores);
+            default:
+                throw new IllegalArgumentException("unknown executor: " + name);
+        }
+    }
+}
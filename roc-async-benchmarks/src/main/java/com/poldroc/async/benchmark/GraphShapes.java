@@ -0,0 +1,123 @@
+package com.poldroc.async.benchmark;
+
+import com.poldroc.async.worker.IWorker;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基准测试用的图模板，返回值是传给Async.beginWork的起始wrapper
+ */
+public final class GraphShapes {
+
+    private GraphShapes() {
+    }
+
+    /**
+     * @param shape chain / fanOut / fanIn / diamond / randomDag / deep
+     * @param size  节点规模，各形状的含义见对应方法
+     */
+    public static List<WorkerWrapper> create(String shape, int size, IWorker<Integer, Integer> worker) {
+        switch (shape) {
+            case "chain":
+                return chain(size, worker);
+            case "fanOut":
+                return fanOut(size, worker);
+            case "fanIn":
+                return fanIn(size, worker);
+            case "diamond":
+                return diamond(size, worker);
+            case "randomDag":
+                return randomDag(size, 0.2, 42L, worker);
+            case "deep":
+                return chain(size * 32, worker);
+            default:
+                throw new IllegalArgumentException("unknown shape: " + shape);
+        }
+    }
+
+    /**
+     * 0 - 1 - ... - (n-1)
+     */
+    public static List<WorkerWrapper> chain(int n, IWorker<Integer, Integer> worker) {
+        WorkerWrapper<Integer, Integer> next = null;
+        for (int i = n - 1; i >= 0; i--) {
+            WorkerWrapper.Builder<Integer, Integer> builder = node(i, worker);
+            if (next != null) {
+                builder.next(next);
+            }
+            next = builder.build();
+        }
+        return Collections.singletonList(next);
+    }
+
+    /**
+     * 一个起点，n个并行的下游
+     */
+    public static List<WorkerWrapper> fanOut(int n, IWorker<Integer, Integer> worker) {
+        WorkerWrapper.Builder<Integer, Integer> root = node(0, worker);
+        for (int i = 1; i <= n; i++) {
+            root.next(node(i, worker).build());
+        }
+        return Collections.singletonList(root.build());
+    }
+
+    /**
+     * n个并行的起点，汇聚到一个必须等待全部上游的终点
+     */
+    public static List<WorkerWrapper> fanIn(int n, IWorker<Integer, Integer> worker) {
+        WorkerWrapper<Integer, Integer> sink = node(n, worker).build();
+        List<WorkerWrapper> roots = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            roots.add(node(i, worker).next(sink).build());
+        }
+        return roots;
+    }
+
+    /**
+     * 一个起点，n个并行的中间节点，再汇聚到一个终点
+     */
+    public static List<WorkerWrapper> diamond(int n, IWorker<Integer, Integer> worker) {
+        WorkerWrapper<Integer, Integer> sink = node(n + 1, worker).build();
+        WorkerWrapper.Builder<Integer, Integer> root = node(0, worker);
+        for (int i = 1; i <= n; i++) {
+            root.next(node(i, worker).next(sink).build());
+        }
+        return Collections.singletonList(root.build());
+    }
+
+    /**
+     * 固定种子的随机DAG：i < j 时以概率p存在边 i -> j，没有上游的节点作为起点
+     */
+    public static List<WorkerWrapper> randomDag(int n, double p, long seed, IWorker<Integer, Integer> worker) {
+        Random random = new Random(seed);
+        List<WorkerWrapper<Integer, Integer>> nodes = new ArrayList<>(n);
+        List<WorkerWrapper> roots = new ArrayList<>();
+        for (int j = 0; j < n; j++) {
+            WorkerWrapper.Builder<Integer, Integer> builder = node(j, worker);
+            boolean hasDepend = false;
+            for (int i = 0; i < j; i++) {
+                if (random.nextDouble() < p) {
+                    builder.depend(nodes.get(i));
+                    hasDepend = true;
+                }
+            }
+            WorkerWrapper<Integer, Integer> wrapper = builder.build();
+            nodes.add(wrapper);
+            if (!hasDepend) {
+                roots.add(wrapper);
+            }
+        }
+        return roots;
+    }
+
+    private static WorkerWrapper.Builder<Integer, Integer> node(int i, IWorker<Integer, Integer> worker) {
+        return new WorkerWrapper.Builder<Integer, Integer>()
+                .id("n" + i)
+                .worker(worker)
+                .param(i);
+    }
+}
@@ -0,0 +1,31 @@
+package com.poldroc.async.benchmark;
+
+import com.poldroc.async.worker.IWorker;
+import com.poldroc.async.wrapper.WorkerWrapper;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+
+/**
+ * 只消耗固定CPU的worker，tokens为0时只测量引擎本身
+ */
+public class NoopWorker implements IWorker<Integer, Integer> {
+
+    private final long tokens;
+
+    public NoopWorker() {
+        this(0);
+    }
+
+    public NoopWorker(long tokens) {
+        this.tokens = tokens;
+    }
+
+    @Override
+    public Integer action(Integer param, Map<String, WorkerWrapper> allWrappers) {
+        if (tokens > 0) {
+            Blackhole.consumeCPU(tokens);
+        }
+        return param;
+    }
+}
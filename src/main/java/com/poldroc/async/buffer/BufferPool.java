@@ -0,0 +1,104 @@
+package com.poldroc.async.buffer;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a pool of direct buffers in power-of-two size classes, so large worker results neither live on the heap
+ * nor pay for a fresh direct allocation every time
+ * <p>
+ * requests larger than the largest class get an unpooled buffer that is left to the garbage collector, and
+ * released buffers beyond {@code maxPooledBytes} are dropped the same way
+ */
+public final class BufferPool {
+
+    /**
+     * classes from 4KB to 16MB, at most 256MB kept idle
+     */
+    public static final BufferPool DEFAULT = new BufferPool(4 << 10, 16 << 20, 256L << 20);
+
+    private final int minShift;
+
+    private final int maxCapacity;
+
+    private final long maxPooledBytes;
+
+    private final ConcurrentLinkedDeque<ByteBuffer>[] classes;
+
+    private final AtomicLong pooledBytes = new AtomicLong();
+
+    private final AtomicLong allocated = new AtomicLong();
+
+    /**
+     * @param minCapacity    smallest size class, rounded up to a power of two
+     * @param maxCapacity    largest pooled size class, rounded up to a power of two
+     * @param maxPooledBytes idle memory kept in the pool
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(int minCapacity, int maxCapacity, long maxPooledBytes) {
+        if (minCapacity < 1 || maxCapacity < minCapacity || maxCapacity > 1 << 30) {
+            throw new IllegalArgumentException("invalid size classes");
+        }
+        this.minShift = shift(minCapacity);
+        int maxShift = shift(maxCapacity);
+        this.maxCapacity = 1 << maxShift;
+        this.maxPooledBytes = maxPooledBytes;
+        this.classes = new ConcurrentLinkedDeque[maxShift - minShift + 1];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new ConcurrentLinkedDeque<>();
+        }
+    }
+
+    /**
+     * borrow a buffer with room for at least {@code capacity} bytes, its limit set to {@code capacity};
+     * the caller owns the only reference
+     */
+    public PooledBuffer acquire(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        if (capacity > maxCapacity) {
+            allocated.incrementAndGet();
+            return new PooledBuffer(ByteBuffer.allocateDirect(capacity), null);
+        }
+        int shift = Math.max(minShift, shift(capacity));
+        ByteBuffer buffer = classes[shift - minShift].pollFirst();
+        if (buffer == null) {
+            allocated.incrementAndGet();
+            buffer = ByteBuffer.allocateDirect(1 << shift);
+        } else {
+            pooledBytes.addAndGet(-buffer.capacity());
+        }
+        ((Buffer) buffer).limit(capacity);
+        return new PooledBuffer(buffer, this);
+    }
+
+    void recycle(ByteBuffer buffer) {
+        if (pooledBytes.addAndGet(buffer.capacity()) > maxPooledBytes) {
+            pooledBytes.addAndGet(-buffer.capacity());
+            return;
+        }
+        // last in first out, the most recently used memory is the most likely to still be cached
+        classes[shift(buffer.capacity()) - minShift].offerFirst(buffer);
+    }
+
+    /**
+     * @return bytes held idle in the pool
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * @return direct buffers allocated so far, pooled or not
+     */
+    public long getAllocatedCount() {
+        return allocated.get();
+    }
+
+    private static int shift(int capacity) {
+        return capacity <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(capacity - 1);
+    }
+}
@@ -0,0 +1,99 @@
+package com.poldroc.async.buffer;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * a reference-counted direct {@link ByteBuffer} borrowed from a {@link BufferPool}
+ * <p>
+ * a worker that returns a pooled buffer as its result hands its reference to the engine: downstream workers
+ * read the same memory through {@link #view()} without copying, and once the last of them has finished the
+ * engine releases the reference and the memory goes back to the pool. a buffer with no downstream wrapper is
+ * kept until its wrapper runs again or {@link com.poldroc.async.wrapper.WorkerWrapper#releaseResult()} is called.
+ * <p>
+ * anyone keeping the buffer, or a view of it, beyond that point must {@link #retain()} it before it escapes
+ * and {@link #release()} it when done. after the count reaches zero the memory goes back to the pool and
+ * {@link #buffer()} and {@link #view()} fail, but a {@code ByteBuffer} obtained from them earlier is a plain
+ * view of the memory and is not checked: it keeps reading whatever the next borrower writes there
+ */
+public final class PooledBuffer {
+
+    private static final AtomicIntegerFieldUpdater<PooledBuffer> REF_COUNT =
+            AtomicIntegerFieldUpdater.newUpdater(PooledBuffer.class, "refCount");
+
+    private final ByteBuffer buffer;
+
+    /**
+     * null for buffers too large to pool
+     */
+    private final BufferPool pool;
+
+    private volatile int refCount = 1;
+
+    PooledBuffer(ByteBuffer buffer, BufferPool pool) {
+        this.buffer = buffer;
+        this.pool = pool;
+    }
+
+    /**
+     * the buffer itself, for the producer to fill; flip it when done so {@link #view()} sees the content
+     */
+    public ByteBuffer buffer() {
+        ensureAccessible();
+        return buffer;
+    }
+
+    /**
+     * a read-only view of the content between position and limit, sharing the memory, with its own position.
+     * the view stays valid only while the caller's reference is held
+     */
+    public ByteBuffer view() {
+        ensureAccessible();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    public PooledBuffer retain() {
+        int count;
+        do {
+            count = refCount;
+            if (count <= 0) {
+                throw new IllegalStateException("buffer already released");
+            }
+        } while (!REF_COUNT.compareAndSet(this, count, count + 1));
+        return this;
+    }
+
+    /**
+     * @return true if this was the last reference and the memory went back to the pool
+     */
+    public boolean release() {
+        int count = REF_COUNT.decrementAndGet(this);
+        if (count > 0) {
+            return false;
+        }
+        if (count < 0) {
+            REF_COUNT.incrementAndGet(this);
+            throw new IllegalStateException("buffer already released");
+        }
+        if (pool != null) {
+            ((Buffer) buffer).clear();
+            pool.recycle(buffer);
+        }
+        return true;
+    }
+
+    public int refCount() {
+        return refCount;
+    }
+
+    private void ensureAccessible() {
+        if (refCount <= 0) {
+            throw new IllegalStateException("buffer already released");
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.poldroc.async.callback;
+
+import com.poldroc.async.buffer.PooledBuffer;
+import com.poldroc.async.worker.WorkResult;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * runs {@link ICallback#begin()} and {@link ICallback#result} on a separate executor instead of the worker thread,
+ * so slow callbacks (logging, metrics, publishing to a queue) no longer delay the successors of a wrapper
+ * <p>
+ * worker threads publish callback events into a bounded multi-producer ring buffer. a single drain task on the
+ * callback executor delivers them in publication order, in batches of up to {@code batchSize} events before it
+ * yields the executor thread, and is only scheduled while there are events to deliver. since a wrapper's begin
+ * slot is claimed before it starts working and its result is published only after it stopped working, every
+ * callback sees begin before result, and callbacks are never called concurrently with each other.
+ * <p>
+ * the result handed to {@link ICallback#result} is a snapshot, the wrapper's own result object is reused by the
+ * next execution. a {@link PooledBuffer} result is retained by the snapshot and released once the callback
+ * returned, so the downstream wrappers finishing first cannot recycle it under the callback. when the ring is full the publishing thread waits for the drain task to catch up.
+ * {@link com.poldroc.async.executor.Async#beginWork} may return before all callbacks have run, use
+ * {@link #awaitIdle(long, TimeUnit)} when the caller needs them
+ */
+public class CallbackDispatcher {
+
+    private static final int BEGIN = 1;
+
+    private static final int RESULT = 2;
+
+    private final Executor executor;
+
+    private final int mask;
+
+    private final int batchSize;
+
+    private final int[] kinds;
+
+    private final ICallback[] callbacks;
+
+    private final boolean[] successes;
+
+    private final Object[] params;
+
+    private final WorkResult[] results;
+
+    /**
+     * sequence published into each slot, a slot is readable once it holds the consumer's sequence
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * next sequence to claim
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * next sequence to deliver, only written by the drain task
+     */
+    private volatile long head;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final Runnable drainTask = this::drain;
+
+    public CallbackDispatcher(Executor executor) {
+        this(executor, 1024, 64);
+    }
+
+    /**
+     * @param capacity  ring size, rounded up to a power of two
+     * @param batchSize events delivered per drain task before it gives the executor thread back
+     */
+    public CallbackDispatcher(Executor executor, int capacity, int batchSize) {
+        if (executor == null) {
+            throw new NullPointerException("executor cannot be null");
+        }
+        if (capacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("capacity and batchSize must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.executor = executor;
+        this.mask = size - 1;
+        this.batchSize = batchSize;
+        this.kinds = new int[size];
+        this.callbacks = new ICallback[size];
+        this.successes = new boolean[size];
+        this.params = new Object[size];
+        this.results = new WorkResult[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * reserve the slot for a begin event, must be followed by {@link #begin(long, ICallback)} or {@link #skip(long)}
+     *
+     * @return sequence of the reserved slot
+     */
+    public long claim() {
+        long sequence = tail.getAndIncrement();
+        while (sequence - head > mask) {
+            // ring is full, wait for the drain task
+            LockSupport.parkNanos(10_000L);
+        }
+        return sequence;
+    }
+
+    /**
+     * publish a begin event into a claimed slot
+     */
+    public void begin(long sequence, ICallback<?, ?> callback) {
+        publish(sequence, BEGIN, callback, false, null, null);
+    }
+
+    /**
+     * release a claimed slot without an event, the wrapper did not start after all
+     */
+    public void skip(long sequence) {
+        publish(sequence, 0, null, false, null, null);
+    }
+
+    /**
+     * publish a result event
+     */
+    public <T, V> void result(ICallback<T, V> callback, boolean success, T param, WorkResult<V> workResult) {
+        V value = workResult.getResult();
+        if (value instanceof PooledBuffer) {
+            ((PooledBuffer) value).retain();
+        }
+        WorkResult<V> snapshot = new WorkResult<>(value, workResult.getResultState(), workResult.getEx());
+        publish(claim(), RESULT, callback, success, param, snapshot);
+    }
+
+    /**
+     * wait until every event published so far has been delivered
+     *
+     * @return false if the timeout elapsed first
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = tail.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (head - target < 0) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(50_000L);
+        }
+        return true;
+    }
+
+    /**
+     * @return events published or claimed but not delivered yet
+     */
+    public int getBacklog() {
+        return (int) (tail.get() - head);
+    }
+
+    private void publish(long sequence, int kind, ICallback callback, boolean success, Object param, WorkResult result) {
+        int index = (int) sequence & mask;
+        kinds[index] = kind;
+        callbacks[index] = callback;
+        successes[index] = success;
+        params[index] = param;
+        results[index] = result;
+        // volatile write, pairs with the drain task clearing scheduled before it looks at the ring again
+        published.set(index, sequence);
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(drainTask);
+            } catch (RejectedExecutionException e) {
+                // executor is shut down, deliver on the caller instead of dropping the events
+                drain();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drain() {
+        long sequence = head;
+        int delivered = 0;
+        while (delivered < batchSize) {
+            int index = (int) sequence & mask;
+            if (published.get(index) != sequence) {
+                // nothing more, or the next slot is claimed but not filled yet
+                break;
+            }
+            int kind = kinds[index];
+            ICallback callback = callbacks[index];
+            boolean success = successes[index];
+            Object param = params[index];
+            WorkResult result = results[index];
+            callbacks[index] = null;
+            params[index] = null;
+            results[index] = null;
+            // the callback may replace the snapshot's result, release what was retained
+            Object value = kind == RESULT ? result.getResult() : null;
+            try {
+                if (kind == BEGIN) {
+                    callback.begin();
+                } else if (kind == RESULT) {
+                    callback.result(success, param, result);
+                }
+            } catch (Throwable ignored) {
+                // one failing callback must not stop the delivery of the others
+            }
+            if (value instanceof PooledBuffer) {
+                ((PooledBuffer) value).release();
+            }
+            // advanced only after the callback returned, so awaitIdle also waits for the one running
+            head = ++sequence;
+            delivered++;
+        }
+        scheduled.set(false);
+        if (published.get((int) sequence & mask) == sequence) {
+            // more events are ready, give the thread back and continue in a new task
+            schedule();
+        }
+    }
+}
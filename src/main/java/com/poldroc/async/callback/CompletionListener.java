@@ -0,0 +1,23 @@
+package com.poldroc.async.callback;
+
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+/**
+ * listens to every wrapper of one execution reaching its final state, in completion order
+ * <p>
+ * unlike {@link ICallback}, which belongs to a single wrapper, one listener sees the whole graph.
+ * it is called on the thread that finished the wrapper, right after the wrapper's own callback,
+ * exactly once per wrapper and execution, including failed, timed-out and skipped wrappers.
+ * implementations must be thread-safe, fast and must not throw
+ */
+@FunctionalInterface
+public interface CompletionListener {
+
+    CompletionListener NOOP = wrapper -> {
+    };
+
+    /**
+     * @param wrapper the finished wrapper, its result is {@link WorkerWrapper#getWorkResult()}
+     */
+    void onComplete(WorkerWrapper<?, ?> wrapper);
+}
@@ -0,0 +1,42 @@
+package com.poldroc.async.checkpoint;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * turns node results into the bytes stored in a {@link CheckpointStore} and back
+ * <p>
+ * the wrapper id is passed along so one serializer can pick a different format per node
+ */
+public interface CheckpointSerializer {
+
+    /**
+     * plain java serialization, results must be {@link java.io.Serializable}
+     */
+    CheckpointSerializer JAVA = new CheckpointSerializer() {
+        @Override
+        public byte[] serialize(String wrapperId, Object result) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(result);
+            }
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public Object deserialize(String wrapperId, byte[] bytes) throws IOException {
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return in.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+    };
+
+    byte[] serialize(String wrapperId, Object result) throws IOException;
+
+    Object deserialize(String wrapperId, byte[] bytes) throws IOException;
+}
@@ -0,0 +1,234 @@
+package com.poldroc.async.checkpoint;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * an append-only journal of successful node results, so a long-running graph that is re-executed after a
+ * restart only recomputes the nodes that had not finished
+ * <p>
+ * records are appended to a memory-mapped local file, keyed by a caller-chosen execution id and the wrapper id.
+ * re-executing the same graph with the same execution id through
+ * {@link com.poldroc.async.executor.Async#beginWork(long, java.util.concurrent.ExecutorService, java.util.List, CheckpointStore, String)}
+ * restores recorded nodes instead of running their workers; wrappers therefore need stable ids, set with
+ * {@code Builder.id(...)} rather than the random default.
+ * <p>
+ * every record carries a CRC32, opening the journal stops at the first torn or corrupt record and later appends
+ * overwrite it. the data survives a crash of the process; pass {@code forceOnRecord} to also flush every record
+ * to the device. the journal is limited to 2GB
+ * <pre>
+ * header:  int MAGIC, int VERSION
+ * record:  int length, [short idLength, executionId, short idLength, wrapperId, payload], int crc32
+ * </pre>
+ */
+public class CheckpointStore implements Closeable {
+
+    private static final int MAGIC = 0x524f4343;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER = 8;
+
+    private static final int INITIAL_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+
+    private final CheckpointSerializer serializer;
+
+    private final boolean forceOnRecord;
+
+    private MappedByteBuffer buffer;
+
+    /**
+     * where the next record is written
+     */
+    private int position;
+
+    /**
+     * latest record of every executionId/wrapperId
+     */
+    private final Map<String, Location> index = new HashMap<>();
+
+    private CheckpointStore(FileChannel channel, CheckpointSerializer serializer, boolean forceOnRecord) throws IOException {
+        this.channel = channel;
+        this.serializer = serializer;
+        this.forceOnRecord = forceOnRecord;
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("checkpoint journal is larger than 2GB");
+        }
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, INITIAL_SIZE));
+        if (size < HEADER || buffer.getInt(0) == 0) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+        } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("not a checkpoint journal");
+        }
+        recover();
+    }
+
+    public static CheckpointStore open(Path file, CheckpointSerializer serializer) throws IOException {
+        return open(file, serializer, false);
+    }
+
+    /**
+     * @param forceOnRecord flush every record to the storage device before the node is reported as finished
+     */
+    public static CheckpointStore open(Path file, CheckpointSerializer serializer, boolean forceOnRecord) throws IOException {
+        if (serializer == null) {
+            throw new NullPointerException("serializer cannot be null");
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new CheckpointStore(channel, serializer, forceOnRecord);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * whether the wrapper has a recorded result for this execution
+     */
+    public synchronized boolean contains(String executionId, String wrapperId) {
+        return index.containsKey(key(executionId, wrapperId));
+    }
+
+    /**
+     * @return the recorded result, null when there is none (or the result itself was null)
+     */
+    public synchronized Object restore(String executionId, String wrapperId) throws IOException {
+        Location location = index.get(key(executionId, wrapperId));
+        if (location == null) {
+            return null;
+        }
+        return serializer.deserialize(wrapperId, read(location.offset, location.length));
+    }
+
+    /**
+     * append the result of a successful node, a later record replaces an earlier one with the same key
+     */
+    public void record(String executionId, String wrapperId, Object result) throws IOException {
+        // serialize outside the lock, results of concurrent nodes can be large
+        byte[] payload = serializer.serialize(wrapperId, result);
+        byte[] execution = executionId.getBytes(StandardCharsets.UTF_8);
+        byte[] wrapper = wrapperId.getBytes(StandardCharsets.UTF_8);
+        if (execution.length > Short.MAX_VALUE || wrapper.length > Short.MAX_VALUE) {
+            throw new IOException("id is too long");
+        }
+        ByteBuffer body = ByteBuffer.allocate(2 + execution.length + 2 + wrapper.length + payload.length);
+        body.putShort((short) execution.length).put(execution);
+        body.putShort((short) wrapper.length).put(wrapper);
+        int payloadStart = body.position();
+        body.put(payload);
+        int length = body.capacity();
+        CRC32 crc = new CRC32();
+        crc.update(body.array(), 0, length);
+        synchronized (this) {
+            ensureCapacity(4 + length + 4 + 4);
+            int start = position + 4;
+            // cast so the call also links on java 8, where position(int) is only declared on Buffer
+            ((Buffer) buffer).position(start);
+            buffer.put(body.array());
+            buffer.putInt((int) crc.getValue());
+            // terminator, so leftovers of a torn record after this one are never read as a record
+            buffer.putInt(0);
+            // length is written last, a record without it is ignored on recovery
+            buffer.putInt(position, length);
+            if (forceOnRecord) {
+                buffer.force();
+            }
+            position = start + length + 4;
+            index.put(key(executionId, wrapperId), new Location(start + payloadStart, payload.length));
+        }
+    }
+
+    /**
+     * @return number of distinct executionId/wrapperId records
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private void recover() {
+        int offset = HEADER;
+        int limit = buffer.capacity();
+        CRC32 crc = new CRC32();
+        while (offset + 4 <= limit) {
+            int length = buffer.getInt(offset);
+            int start = offset + 4;
+            if (length < 4 || start + length + 4 > limit || start + length < 0) {
+                break;
+            }
+            crc.reset();
+            crc.update(read(start, length), 0, length);
+            if ((int) crc.getValue() != buffer.getInt(start + length)) {
+                break;
+            }
+            int executionLength = buffer.getShort(start);
+            int wrapperLength = buffer.getShort(start + 2 + executionLength);
+            int payloadOffset = start + 2 + executionLength + 2 + wrapperLength;
+            index.put(key(string(start + 2, executionLength), string(start + 4 + executionLength, wrapperLength)),
+                    new Location(payloadOffset, start + length - payloadOffset));
+            offset = start + length + 4;
+        }
+        position = offset;
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        long needed = (long) position + bytes;
+        if (needed <= buffer.capacity()) {
+            return;
+        }
+        if (needed > Integer.MAX_VALUE) {
+            throw new IOException("checkpoint journal is full");
+        }
+        long size = Math.min(Integer.MAX_VALUE, Math.max(needed, (long) buffer.capacity() * 2));
+        buffer.force();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private String string(int offset, int length) {
+        return new String(read(offset, length), StandardCharsets.UTF_8);
+    }
+
+    private byte[] read(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        ((Buffer) source).position(offset);
+        source.get(bytes);
+        return bytes;
+    }
+
+    private static String key(String executionId, String wrapperId) {
+        return executionId + '\u0000' + wrapperId;
+    }
+
+    private static final class Location {
+
+        private final int offset;
+
+        private final int length;
+
+        private Location(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
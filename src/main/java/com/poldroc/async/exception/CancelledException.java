@@ -0,0 +1,28 @@
+package com.poldroc.async.exception;
+
+/**
+ * This exception is set on a wrapper that was cancelled because the join it feeds already
+ * reached its quorum or first success through other upstreams.
+ */
+public class CancelledException extends RuntimeException {
+
+    /**
+     * shared stackless instance used by the engine for control flow,
+     * a cancelled loser is a normal outcome and must not pay for a stack trace
+     */
+    public static final CancelledException INSTANCE = new CancelledException(
+            "CancelledException: current work is cancelled because the join it feeds has already been satisfied by other works.",
+            false);
+
+    public CancelledException() {
+        super("CancelledException: current work is cancelled because the join it feeds has already been satisfied by other works.");
+    }
+
+    public CancelledException(String message) {
+        super(message);
+    }
+
+    protected CancelledException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
+}
@@ -5,6 +5,15 @@ package com.poldroc.async.exception;
  * or is being executed before current work is executed.
  */
 public class SkippedException extends RuntimeException {
+
+    /**
+     * shared stackless instance used by the engine for control flow,
+     * a skipped node is a normal outcome and must not pay for a stack trace
+     */
+    public static final SkippedException INSTANCE = new SkippedException(
+            "SkippedException: current work is skipped because the next work has already been executed or is being executed.",
+            false);
+
     public SkippedException() {
         super("SkippedException: current work is skipped because the next work has already been executed or is being executed.");
     }
@@ -12,4 +21,8 @@ public class SkippedException extends RuntimeException {
     public SkippedException(String message) {
         super(message);
     }
+
+    protected SkippedException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
 }
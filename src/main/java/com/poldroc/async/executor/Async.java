@@ -1,10 +1,25 @@
 package com.poldroc.async.executor;
 
+import com.poldroc.async.callback.CallbackDispatcher;
+import com.poldroc.async.callback.CompletionListener;
+import com.poldroc.async.checkpoint.CheckpointStore;
+import com.poldroc.async.jfr.JfrEvents;
+import com.poldroc.async.jmx.AsyncMonitoring;
+import com.poldroc.async.metrics.MetricsCollector;
+import com.poldroc.async.timer.DeadlineClock;
+import com.poldroc.async.timer.MonotonicClock;
+import com.poldroc.async.trace.ExecutionTrace;
+import com.poldroc.async.trace.ExecutionTracer;
+import com.poldroc.async.wrapper.WorkGraph;
 import com.poldroc.async.wrapper.WorkerWrapper;
 
-import java.util.*;
-import java.util.concurrent.*;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 框架入口
@@ -15,31 +30,179 @@ public class Async {
 
     private static ExecutorService executorService;
 
+    private static volatile MetricsCollector metricsCollector = MetricsCollector.NOOP;
+
+    private static volatile ExecutionTracer tracer;
+
+    private static volatile DeadlineClock clock = MonotonicClock.INSTANCE;
+
+    private static volatile boolean criticalPathScheduling;
+
+    private static volatile CallbackDispatcher callbackDispatcher;
+
+    private static volatile boolean dropConsumedResults;
+
+    private static volatile boolean helpWhileWaiting;
+
+    /**
+     * 正在执行的beginWork数，以及累计的执行数和超时数，给监控用
+     */
+    private static final LongAdder IN_FLIGHT_GRAPHS = new LongAdder();
+
+    private static final LongAdder GRAPH_COUNT = new LongAdder();
+
+    private static final LongAdder GRAPH_TIMEOUT_COUNT = new LongAdder();
+
+    private static final LongAdder STARVATION_COUNT = new LongAdder();
+
+    static {
+        // 不改代码，用-Droc.async.jmx=true开启JMX监控
+        if (Boolean.getBoolean("roc.async.jmx")) {
+            AsyncMonitoring.register();
+        }
+    }
+
     /**
      * 出发点
      */
     public static boolean beginWork(long timeout, ExecutorService executorService, List<WorkerWrapper> workerWrappers) throws ExecutionException, InterruptedException {
+        return beginWork(timeout, executorService, workerWrappers, CompletionListener.NOOP);
+    }
+
+    /**
+     * 同步阻塞执行，每个wrapper结束时按完成顺序通知listener
+     *
+     * @param completionListener 在完成wrapper的线程里调用
+     */
+    public static boolean beginWork(long timeout, ExecutorService executorService, List<WorkerWrapper> workerWrappers,
+                                    CompletionListener completionListener) throws ExecutionException, InterruptedException {
+        return beginWork(timeout, executorService, workerWrappers, completionListener, null, null, null, false);
+    }
+
+    /**
+     * 同步阻塞执行，只计算outputs和它们传递依赖的wrapper（上游和Builder.reads声明的），
+     * 其余wrapper在调度之前就被标记为跳过，不执行worker也没有回调。适合多个接口共用一张大图、各自只需要其中一部分的场景
+     *
+     * @param workerWrappers 图的起始wrapper
+     * @param outputs        需要的输出，必须能从起始wrapper到达
+     */
+    public static boolean beginWorkFor(long timeout, ExecutorService executorService, List<WorkerWrapper> workerWrappers,
+                                       WorkerWrapper... outputs) throws ExecutionException, InterruptedException {
+        return beginWorkFor(timeout, executorService, workerWrappers, CompletionListener.NOOP, outputs);
+    }
+
+    /**
+     * 同 {@link #beginWorkFor(long, ExecutorService, List, WorkerWrapper...)}，被跳过的wrapper也会通知completionListener
+     *
+     * @param completionListener 在完成wrapper的线程里调用，被跳过的wrapper在调度之前的调用线程里调用
+     */
+    public static boolean beginWorkFor(long timeout, ExecutorService executorService, List<WorkerWrapper> workerWrappers,
+                                       CompletionListener completionListener, WorkerWrapper... outputs)
+            throws ExecutionException, InterruptedException {
+        if (outputs == null || outputs.length == 0) {
+            throw new IllegalArgumentException("outputs cannot be empty");
+        }
+        return beginWork(timeout, executorService, workerWrappers, completionListener, null, null, Arrays.asList(outputs), false);
+    }
+
+    /**
+     * 同步阻塞的增量执行：和上一次执行相比，param没有变化（equals）、也没有被 {@link WorkerWrapper#invalidate()} 标记的wrapper，
+     * 只要读的上游也都没有变化，就直接复用上一次的成功结果，不再执行worker；其余的和它们的下游重新计算。
+     * 第一次执行、上一次失败或超时的wrapper总是重新计算
+     */
+    public static boolean beginWorkIncremental(long timeout, ExecutorService executorService, List<WorkerWrapper> workerWrappers)
+            throws ExecutionException, InterruptedException {
+        return beginWork(timeout, executorService, workerWrappers, CompletionListener.NOOP, null, null, null, true);
+    }
+
+    public static boolean beginWorkIncremental(long timeout, ExecutorService executorService, WorkerWrapper... workerWrapper)
+            throws ExecutionException, InterruptedException {
+        return beginWorkIncremental(timeout, executorService, workerWrapper == null ? null : Arrays.asList(workerWrapper));
+    }
+
+    /**
+     * 同步阻塞执行，成功的wrapper结果记录到checkpointStore；
+     * 用同一个executionId重新执行（比如进程重启后）时，已经记录过的wrapper直接恢复结果，不再执行worker
+     *
+     * @param executionId 调用方指定的执行id，wrapper需要用Builder.id设置固定的id
+     */
+    public static boolean beginWork(long timeout, ExecutorService executorService, List<WorkerWrapper> workerWrappers,
+                                    CheckpointStore checkpointStore, String executionId) throws ExecutionException, InterruptedException {
+        if (checkpointStore == null || executionId == null) {
+            throw new NullPointerException("checkpointStore and executionId cannot be null");
+        }
+        return beginWork(timeout, executorService, workerWrappers, CompletionListener.NOOP, checkpointStore, executionId, null, false);
+    }
+
+    private static boolean beginWork(long timeout, ExecutorService executorService, List<WorkerWrapper> workerWrappers,
+                                     CompletionListener completionListener, CheckpointStore checkpointStore,
+                                     String executionId, List<WorkerWrapper> outputs, boolean incremental)
+            throws ExecutionException, InterruptedException {
         if (workerWrappers == null || workerWrappers.isEmpty()) {
             return false;
         }
         Async.executorService = executorService;
-        // 存放所有的wrapper，key：wrapper的唯一id，value是该wrapper，可以从value中获取wrapper的result
-        Map<String, WorkerWrapper> forParamUseWrapper = new ConcurrentHashMap<>();
-        CompletableFuture[] futures = new CompletableFuture[workerWrappers.size()];
-        for (int i = 0; i < workerWrappers.size(); i++) {
-            WorkerWrapper workerWrapper = workerWrappers.get(i);
-            futures[i] = CompletableFuture.runAsync(() -> workerWrapper.work(executorService, timeout, forParamUseWrapper), executorService);
-        }
+        MetricsCollector metrics = metricsCollector;
+        long begin = metrics == MetricsCollector.NOOP ? 0 : System.nanoTime();
+        ExecutionTracer tracer = Async.tracer;
+        DeadlineClock clock = Async.clock;
+        ExecutionContext context = ExecutionContext.acquire(executorService, metrics, tracer, clock,
+                completionListener == null ? CompletionListener.NOOP : completionListener, callbackDispatcher, criticalPathScheduling, dropConsumedResults);
+        context.checkpoint(checkpointStore, executionId);
+        context.incremental(incremental);
+        context.helpWhileWaiting(helpWhileWaiting);
+        ExecutionTrace trace = context.getTrace();
+        Object jfrEvent = JfrEvents.AVAILABLE ? JfrEvents.beginGraph() : null;
+        boolean completed = false;
+        WorkGraph graph = null;
+        clock.executionStarted();
+        IN_FLIGHT_GRAPHS.increment();
         try {
-            CompletableFuture.allOf(futures).get(timeout, TimeUnit.MILLISECONDS);
-            return true;
-        } catch (TimeoutException e) {
-            Set<WorkerWrapper> set = new HashSet<>();
-            totalWorkers(workerWrappers, set);
-            for (WorkerWrapper wrapper : set) {
-                wrapper.stopNow();
+            graph = context.prepare(workerWrappers);
+            if (trace != null) {
+                trace.setShapeKey(graph.getShapeKey());
+            }
+            if (outputs == null) {
+                for (int i = 0; i < workerWrappers.size(); i++) {
+                    context.submit(null, workerWrappers.get(i), timeout);
+                }
+            } else {
+                for (WorkerWrapper<?, ?> root : graph.restrictTo(outputs)) {
+                    context.submit(null, root, timeout);
+                }
+            }
+            boolean finished = context.await(timeout);
+            if (context.isStarved()) {
+                STARVATION_COUNT.increment();
+            }
+            if (finished) {
+                completed = true;
+                if (begin != 0) {
+                    metrics.onGraph(System.nanoTime() - begin, true);
+                }
+                if (trace != null) {
+                    tracer.finish(trace, true);
+                }
+                context.checkFailure();
+                return true;
+            }
+            graph.stopNow();
+            GRAPH_TIMEOUT_COUNT.increment();
+            if (begin != 0) {
+                metrics.onGraph(System.nanoTime() - begin, false);
+            }
+            if (trace != null) {
+                tracer.finish(trace, false);
             }
             return false;
+        } finally {
+            if (jfrEvent != null) {
+                JfrEvents.endGraph(jfrEvent, context.getExecutionId(), graph == null ? 0 : graph.size(), timeout, completed);
+            }
+            clock.executionFinished();
+            IN_FLIGHT_GRAPHS.decrement();
+            GRAPH_COUNT.increment();
+            context.release(completed);
         }
     }
 
@@ -47,8 +210,7 @@ public class Async {
         if (workerWrapper == null || workerWrapper.length == 0) {
             return false;
         }
-        List<WorkerWrapper> workerWrappers = Arrays.stream(workerWrapper).collect(Collectors.toList());
-        return beginWork(timeout, executorService, workerWrappers);
+        return beginWork(timeout, executorService, Arrays.asList(workerWrapper));
     }
 
     /**
@@ -59,17 +221,28 @@ public class Async {
     }
 
     /**
-     * 递归找出所有的执行单元
+     * 异步执行，立即返回按完成顺序产出wrapper的流，调用方可以边执行边处理已经完成的结果
+     * <p>
+     * 等待整个执行结束的协调线程来自框架自己的公共线程池，不占用executorService的线程
      */
-    private static void totalWorkers(List<WorkerWrapper> workerWrappers, Set<WorkerWrapper> set) {
-        set.addAll(workerWrappers);
-        for (WorkerWrapper wrapper : workerWrappers) {
-            if (wrapper.getNextWrappers() == null) {
-                continue;
+    public static ResultStream beginWorkStream(long timeout, ExecutorService executorService, List<WorkerWrapper> workerWrappers) {
+        ResultStream stream = new ResultStream();
+        COMMON_POOL.execute(() -> {
+            try {
+                stream.finish(beginWork(timeout, executorService, workerWrappers, stream), null);
+            } catch (Throwable t) {
+                stream.finish(false, t);
             }
-            List<WorkerWrapper> wrappers = wrapper.getNextWrappers();
-            totalWorkers(wrappers, set);
-        }
+        });
+        return stream;
+    }
+
+    public static ResultStream beginWorkStream(long timeout, ExecutorService executorService, WorkerWrapper... workerWrapper) {
+        return beginWorkStream(timeout, executorService, workerWrapper == null ? null : Arrays.asList(workerWrapper));
+    }
+
+    public static ResultStream beginWorkStream(long timeout, WorkerWrapper... workerWrapper) {
+        return beginWorkStream(timeout, COMMON_POOL, workerWrapper);
     }
 
     /**
@@ -90,6 +263,132 @@ public class Async {
         }
     }
 
+    /**
+     * 安装全局的metrics收集器，传null恢复为不收集
+     */
+    public static void setMetricsCollector(MetricsCollector metricsCollector) {
+        Async.metricsCollector = metricsCollector == null ? MetricsCollector.NOOP : metricsCollector;
+    }
+
+    public static MetricsCollector getMetricsCollector() {
+        return metricsCollector;
+    }
+
+    /**
+     * 安装全局的采样tracer，传null关闭
+     */
+    public static void setTracer(ExecutionTracer tracer) {
+        Async.tracer = tracer;
+    }
+
+    public static ExecutionTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * 替换计算剩余时间用的时钟，传null恢复为 {@link MonotonicClock}
+     */
+    public static void setClock(DeadlineClock clock) {
+        Async.clock = clock == null ? MonotonicClock.INSTANCE : clock;
+    }
+
+    public static DeadlineClock getClock() {
+        return clock;
+    }
+
+    /**
+     * 开启关键路径优先调度：学习每个wrapper的耗时，用Builder.id指定了id的在每次重新构建的图之间共用，按拓扑算出每个wrapper到图结束的最长路径，
+     * 同时就绪的next里路径最长的在当前线程直接执行，其余按路径从长到短提交；
+     * 配合 {@link EdfExecutor} 时线程池按最晚开始时间出队，不同分支之间也是关键路径优先
+     */
+    public static void setCriticalPathScheduling(boolean criticalPathScheduling) {
+        Async.criticalPathScheduling = criticalPathScheduling;
+    }
+
+    public static boolean isCriticalPathScheduling() {
+        return criticalPathScheduling;
+    }
+
+    /**
+     * 开启后，一个wrapper的结果在读它的wrapper（下游和用Builder.reads声明的）都结束后就被丢掉，
+     * 不用等到beginWork返回，降低执行中的内存占用。被Builder.output标记的和没有下游的wrapper结果一直保留
+     */
+    public static void setDropConsumedResults(boolean dropConsumedResults) {
+        Async.dropConsumedResults = dropConsumedResults;
+    }
+
+    public static boolean isDropConsumedResults() {
+        return dropConsumedResults;
+    }
+
+    /**
+     * 在线程池的worker里用同一个线程池嵌套调用beginWork时，调用线程等待期间占着池里的线程；
+     * 有界线程池的线程都在这样等待时，嵌套图的任务排在队列里轮不到执行，只能等到超时（线程池饿死）。
+     * 开启后，嵌套调用的线程在等待期间自己执行嵌套图排队的任务，任务同时也提交给线程池，谁先拿到谁执行。
+     * 不开启时只检测，见 {@link #getStarvationCount()}
+     */
+    public static void setHelpWhileWaiting(boolean helpWhileWaiting) {
+        Async.helpWhileWaiting = helpWhileWaiting;
+    }
+
+    public static boolean isHelpWhileWaiting() {
+        return helpWhileWaiting;
+    }
+
+    /**
+     * 把所有wrapper的callback交给dispatcher在它自己的线程池里执行，不再占用worker线程，传null恢复为同步执行。
+     * 同一个wrapper的begin仍然在result之前；beginWork返回时callback可能还没执行完
+     */
+    public static void setCallbackDispatcher(CallbackDispatcher callbackDispatcher) {
+        Async.callbackDispatcher = callbackDispatcher;
+    }
+
+    public static CallbackDispatcher getCallbackDispatcher() {
+        return callbackDispatcher;
+    }
+
+    /**
+     * @return 最近一次beginWork使用的线程池
+     */
+    public static ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * 框架自己的公共线程池，不指定线程池时使用
+     */
+    public static ExecutorService getCommonPool() {
+        return COMMON_POOL;
+    }
+
+    /**
+     * @return 正在执行的beginWork调用数
+     */
+    public static long getInFlightGraphs() {
+        return IN_FLIGHT_GRAPHS.sum();
+    }
+
+    /**
+     * @return 累计结束的beginWork调用数，包括超时的
+     */
+    public static long getGraphCount() {
+        return GRAPH_COUNT.sum();
+    }
+
+    /**
+     * @return 累计整体超时的beginWork调用数
+     */
+    public static long getGraphTimeoutCount() {
+        return GRAPH_TIMEOUT_COUNT.sum();
+    }
+
+    /**
+     * @return 累计发生线程池饿死的嵌套beginWork调用数：在同一个线程池里嵌套执行，提交的任务20ms内一个都没有开始
+     */
+    public static long getStarvationCount() {
+        return STARVATION_COUNT.sum();
+    }
+
     public static String getThreadCount() {
         return "activeCount=" + COMMON_POOL.getActiveCount() +
                 "  completedCount " + COMMON_POOL.getCompletedTaskCount() +
@@ -0,0 +1,25 @@
+package com.poldroc.async.executor;
+
+/**
+ * 带截止时间的任务，{@link EdfExecutor} 按最晚开始时间排序，并丢弃出队时已经过期的任务
+ */
+public interface DeadlineTask extends Runnable {
+
+    /**
+     * @return 截止时间，{@link System#nanoTime()} 的纳秒
+     */
+    long getDeadline();
+
+    /**
+     * 排序用的最晚开始时间：截止时间减去自己和之后还要经过的最长路径耗时，
+     * 关键路径上的任务因此排在前面。不知道剩余路径时就是截止时间
+     */
+    default long getLatestStartTime() {
+        return getDeadline();
+    }
+
+    /**
+     * 出队时已经过期，代替run调用：不执行worker，只做超时处理，保证等待方能正常结束
+     */
+    void expire();
+}
@@ -0,0 +1,224 @@
+package com.poldroc.async.executor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 最早截止时间优先（EDF）的固定大小线程池
+ * <p>
+ * 普通线程池按提交顺序执行，饱和时快要超时的wrapper要排在还有大把时间的wrapper后面。
+ * 这里按任务的绝对截止时间出队：框架提交的任务实现了 {@link DeadlineTask}，截止时间由wrapper的remainTime算出；
+ * 开启关键路径优先调度时按最晚开始时间（截止时间减去剩余最长路径）出队，关键路径上的wrapper先执行。
+ * 其他任务没有截止时间，排在所有有截止时间的任务之后，相互之间按提交顺序。
+ * 出队时已经过期的任务不再执行worker，直接按超时处理
+ */
+public class EdfExecutor extends AbstractExecutorService {
+
+    /**
+     * 没有截止时间的任务，相对提交时间的偏移，足够大又不会在做差比较时溢出
+     */
+    private static final long NO_DEADLINE = Long.MAX_VALUE >> 2;
+
+    private final PriorityBlockingQueue<Entry> queue = new PriorityBlockingQueue<>();
+
+    private final Thread[] workers;
+
+    private final CountDownLatch terminated;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final LongAdder expiredCount = new LongAdder();
+
+    private volatile boolean shutdown;
+
+    public EdfExecutor(int threads) {
+        this(threads, new ThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "edf-executor-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public EdfExecutor(int threads, ThreadFactory threadFactory) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        this.workers = new Thread[threads];
+        this.terminated = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            workers[i] = threadFactory.newThread(this::runWorker);
+            workers[i].start();
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (shutdown) {
+            throw new RejectedExecutionException("EdfExecutor has been shut down");
+        }
+        long deadline;
+        long key;
+        if (command instanceof DeadlineTask) {
+            DeadlineTask task = (DeadlineTask) command;
+            deadline = task.getDeadline();
+            key = task.getLatestStartTime();
+        } else {
+            deadline = System.nanoTime() + NO_DEADLINE;
+            key = deadline;
+        }
+        queue.offer(new Entry(command, deadline, key, sequence.getAndIncrement(), false));
+    }
+
+    private void runWorker() {
+        try {
+            for (; ; ) {
+                Entry entry;
+                try {
+                    entry = queue.take();
+                } catch (InterruptedException e) {
+                    if (shutdown) {
+                        return;
+                    }
+                    continue;
+                }
+                if (entry.poison) {
+                    return;
+                }
+                active.incrementAndGet();
+                try {
+                    Runnable task = entry.task;
+                    if (task instanceof DeadlineTask && System.nanoTime() - entry.deadline >= 0) {
+                        expiredCount.increment();
+                        ((DeadlineTask) task).expire();
+                    } else {
+                        task.run();
+                    }
+                } catch (RuntimeException | Error e) {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                } finally {
+                    active.decrementAndGet();
+                    // 任务里的中断不能带到下一个任务
+                    if (!shutdown) {
+                        Thread.interrupted();
+                    }
+                }
+            }
+        } finally {
+            terminated.countDown();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
+        // 排在所有任务之后，已经提交的任务执行完以后线程退出
+        for (int i = 0; i < workers.length; i++) {
+            queue.offer(new Entry(null, 0, 0, sequence.getAndIncrement(), true));
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        List<Runnable> pending = new ArrayList<>();
+        List<Entry> drained = new ArrayList<>();
+        queue.drainTo(drained);
+        for (Entry entry : drained) {
+            if (!entry.poison) {
+                pending.add(entry.task);
+            }
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    /**
+     * @return 排队中的任务数
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * @return 出队时已经过期、没有执行而被直接超时处理的任务数
+     */
+    public long getExpiredCount() {
+        return expiredCount.sum();
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+
+        private final Runnable task;
+
+        private final long deadline;
+
+        /**
+         * 排序用的时间
+         */
+        private final long key;
+
+        private final long sequence;
+
+        private final boolean poison;
+
+        private Entry(Runnable task, long deadline, long key, long sequence, boolean poison) {
+            this.task = task;
+            this.deadline = deadline;
+            this.key = key;
+            this.sequence = sequence;
+            this.poison = poison;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            if (poison != o.poison) {
+                return poison ? 1 : -1;
+            }
+            // nanoTime只能做差比较
+            long diff = key - o.key;
+            if (diff != 0) {
+                return diff < 0 ? -1 : 1;
+            }
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+}
@@ -0,0 +1,594 @@
+package com.poldroc.async.executor;
+
+import com.poldroc.async.callback.CallbackDispatcher;
+import com.poldroc.async.checkpoint.CheckpointStore;
+import com.poldroc.async.callback.CompletionListener;
+import com.poldroc.async.jfr.JfrEvents;
+import com.poldroc.async.metrics.MetricsCollector;
+import com.poldroc.async.timer.DeadlineClock;
+import com.poldroc.async.timer.MonotonicClock;
+import com.poldroc.async.trace.ExecutionTrace;
+import com.poldroc.async.trace.ExecutionTracer;
+import com.poldroc.async.wrapper.WorkGraph;
+import com.poldroc.async.worker.Workload;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 一次beginWork执行期间的全部状态
+ * <p>
+ * 按调用线程池化复用：重复执行同一个模板时，map、编译好的执行图、提交给线程池的任务对象都会被复用，
+ * 稳定状态下一次执行不再产生引擎自身的对象分配。
+ * 只有正常结束（没有任何任务还在运行）的context才会被放回池中，超时的context直接丢弃，
+ * 避免还没停下来的任务污染下一次执行
+ */
+public class ExecutionContext {
+
+    private static final ThreadLocal<ExecutionContext> POOL = new ThreadLocal<>();
+
+    private static final AtomicLong EXECUTION_ID = new AtomicLong();
+
+    /**
+     * 当前线程正在执行的任务所属的线程池，用来发现在线程池里嵌套调用beginWork
+     */
+    private static final ThreadLocal<ExecutorService> RUNNING_ON = new ThreadLocal<>();
+
+    /**
+     * 按worker类型分流时，当前线程所在的线程池：CPU或BLOCKING，不确定时为null
+     */
+    private static final ThreadLocal<Workload> RUNNING_WORKLOAD = new ThreadLocal<>();
+
+    /**
+     * 嵌套执行的任务在这段时间内一个都没有开始，就认为线程池已经饿死
+     */
+    private static final long STARVATION_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    /**
+     * 还没有执行完的任务数，归零时唤醒等待线程
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Object taskLock = new Object();
+
+    /**
+     * 空闲的任务对象，单链表
+     */
+    private Task freeTasks;
+
+    private WorkGraph graph;
+
+    /**
+     * 每次执行唯一的id，wrapper据此区分当前执行和已经超时的上一次执行
+     */
+    private long executionId;
+
+    private ExecutorService executorService;
+
+    private MetricsCollector metrics = MetricsCollector.NOOP;
+
+    /**
+     * 计算剩余时间用的时钟
+     */
+    private DeadlineClock clock = MonotonicClock.INSTANCE;
+
+    private CompletionListener completionListener = CompletionListener.NOOP;
+
+    /**
+     * 异步执行callback的分发器，为null时同步执行
+     */
+    private CallbackDispatcher callbackDispatcher;
+
+    /**
+     * 记录和恢复成功结果的checkpoint，为null时不记录
+     */
+    private CheckpointStore checkpointStore;
+
+    /**
+     * 调用方指定的执行id，同一个id重新执行时跳过已经记录过的wrapper
+     */
+    private String checkpointId;
+
+    /**
+     * 本次执行被采样时的trace，否则为null
+     */
+    private ExecutionTrace trace;
+
+    /**
+     * 是否需要读时钟，没有metrics也没有trace时整个执行都不读时钟
+     */
+    private boolean timed;
+
+    /**
+     * 线程池按截止时间调度时，提交的任务需要带上绝对截止时间
+     */
+    private boolean deadlineAware;
+
+    /**
+     * 线程池按worker类型分流，wrapper需要测量worker的CPU时间
+     */
+    private boolean routingWorkload;
+
+    /**
+     * 是否按关键路径优先调度
+     */
+    private boolean prioritized;
+
+    /**
+     * 是否丢掉不会再被读的中间结果
+     */
+    private boolean dropConsumedResults;
+
+    /**
+     * 增量执行，没有变化的wrapper复用上一次的结果
+     */
+    private boolean incremental;
+
+    /**
+     * 在同一个线程池的任务里嵌套调用beginWork：等待的线程占着池里的一个线程，
+     * 池里的线程都在这样等待时，排在队列里的子任务永远轮不到，只能等超时
+     */
+    private boolean nested;
+
+    /**
+     * 嵌套执行时，等待的线程自己执行排队的任务
+     */
+    private boolean helping;
+
+    /**
+     * 帮忙执行的任务，同时也提交给了线程池，谁先拿到谁执行
+     */
+    private final ConcurrentLinkedQueue<Task> helpQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 嵌套执行时，是否已经有任务开始执行
+     */
+    private volatile boolean started;
+
+    /**
+     * 本次嵌套执行是否发生了线程池饿死
+     */
+    private boolean starved;
+
+    private volatile Thread waiter;
+
+    private volatile Throwable failure;
+
+    private boolean inUse;
+
+    private ExecutionContext() {
+    }
+
+    /**
+     * 取当前线程可复用的context，正在被使用（嵌套调用）时新建一个
+     */
+    static ExecutionContext acquire(ExecutorService executorService, MetricsCollector metrics, ExecutionTracer tracer, DeadlineClock clock,
+                                    CompletionListener completionListener, CallbackDispatcher callbackDispatcher, boolean prioritized,
+                                    boolean dropConsumedResults) {
+        ExecutionContext context = POOL.get();
+        if (context == null) {
+            context = new ExecutionContext();
+            POOL.set(context);
+        } else if (context.inUse) {
+            context = new ExecutionContext();
+        }
+        context.inUse = true;
+        context.executionId = EXECUTION_ID.incrementAndGet();
+        context.executorService = executorService;
+        context.deadlineAware = executorService instanceof EdfExecutor;
+        context.routingWorkload = executorService instanceof WorkloadRoutingExecutor;
+        context.metrics = metrics;
+        context.clock = clock;
+        context.completionListener = completionListener;
+        context.callbackDispatcher = callbackDispatcher;
+        context.checkpointStore = null;
+        context.checkpointId = null;
+        context.incremental = false;
+        context.prioritized = prioritized;
+        context.dropConsumedResults = dropConsumedResults;
+        context.trace = tracer == null ? null : tracer.sample(context.executionId);
+        context.timed = metrics != MetricsCollector.NOOP || context.trace != null;
+        context.failure = null;
+        context.nested = RUNNING_ON.get() == executorService;
+        context.helping = false;
+        context.helpQueue.clear();
+        context.started = false;
+        context.starved = false;
+        context.waiter = Thread.currentThread();
+        return context;
+    }
+
+    /**
+     * 这次执行使用checkpoint，需要在prepare之前调用
+     */
+    void checkpoint(CheckpointStore checkpointStore, String checkpointId) {
+        this.checkpointStore = checkpointStore;
+        this.checkpointId = checkpointId;
+    }
+
+    /**
+     * 嵌套在同一个线程池里执行时，等待的线程自己执行排队的任务，需要在submit之前调用
+     */
+    void helpWhileWaiting(boolean helpWhileWaiting) {
+        this.helping = nested && helpWhileWaiting;
+    }
+
+    /**
+     * 这次执行是增量执行，需要在prepare之前调用
+     */
+    void incremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * 准备执行图：同一组起始wrapper复用上次编译的结果，并把所有wrapper重置为初始状态。
+     * 编译结果挂在起始wrapper上、和模板一起回收，context本身不持有执行图
+     */
+    WorkGraph prepare(List<WorkerWrapper> workerWrappers) {
+        graph = WorkGraph.cachedFor(workerWrappers);
+        if (graph == null || !graph.reset(this)) {
+            graph = WorkGraph.compile(workerWrappers);
+            graph.reset(this);
+        }
+        return graph;
+    }
+
+    /**
+     * 执行结束，归还context
+     *
+     * @param completed 是否所有任务都已经结束
+     */
+    void release(boolean completed) {
+        waiter = null;
+        // 不再引用这次执行的wrapper，调用方不再持有模板时，wrapper和结果可以被回收
+        graph = null;
+        failure = null;
+        helpQueue.clear();
+        if (completed) {
+            executorService = null;
+            trace = null;
+            completionListener = CompletionListener.NOOP;
+            checkpointStore = null;
+            inUse = false;
+        } else if (POOL.get() == this) {
+            // 还有任务在跑，这个context不能再给下一次执行用了
+            POOL.remove();
+        }
+    }
+
+    /**
+     * 把一次wrapper的执行提交到线程池
+     *
+     * @param fromWrapper 这次work是由哪个上游wrapper发起的，起始wrapper为null
+     * @param wrapper     要执行的wrapper
+     * @param remainTime  剩余时间
+     */
+    public void submit(WorkerWrapper fromWrapper, WorkerWrapper wrapper, long remainTime) {
+        // 帮忙执行的任务会被线程池和等待线程各拿到一次，不能复用
+        Task task = helping ? new Task(this, true) : acquireTask();
+        task.fromWrapper = fromWrapper;
+        task.wrapper = wrapper;
+        task.remainTime = remainTime;
+        task.enqueueTime = timed ? System.nanoTime() : 0;
+        if (deadlineAware) {
+            task.deadline = System.nanoTime() + Math.min(TimeUnit.MILLISECONDS.toNanos(remainTime), Long.MAX_VALUE >> 2);
+            // 最晚开始时间 = 截止时间 - 自己和之后最长路径的耗时
+            task.latestStartTime = prioritized ? task.deadline - wrapper.getRemainingPathNanos() : task.deadline;
+        }
+        if (JfrEvents.AVAILABLE) {
+            task.jfrEvent = JfrEvents.beginQueued();
+        }
+        pending.incrementAndGet();
+        try {
+            executorService.execute(task);
+        } catch (RuntimeException | Error e) {
+            releaseTask(task);
+            done();
+            throw e;
+        }
+        if (task.helped) {
+            helpQueue.offer(task);
+            Thread thread = waiter;
+            if (thread != null && thread != Thread.currentThread()) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    /**
+     * 阻塞等待所有任务结束
+     *
+     * @return 超时返回false
+     */
+    boolean await(long timeout) throws InterruptedException {
+        long begin = System.nanoTime();
+        long deadline = begin + TimeUnit.MILLISECONDS.toNanos(timeout);
+        // 嵌套执行时分段等待，检查有没有饿死
+        boolean watching = nested && !helping;
+        while (pending.get() != 0) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            long now = System.nanoTime();
+            long left = deadline - now;
+            if (left <= 0) {
+                return false;
+            }
+            if (helping) {
+                Task task = helpQueue.poll();
+                if (task != null) {
+                    task.run();
+                    continue;
+                }
+            } else if (watching) {
+                if (started) {
+                    watching = false;
+                } else if (now - begin >= STARVATION_NANOS) {
+                    starved = true;
+                    watching = false;
+                }
+            }
+            LockSupport.parkNanos(this, watching ? Math.min(left, STARVATION_NANOS >> 2) : left);
+        }
+        return true;
+    }
+
+    /**
+     * @return 这次执行是否嵌套在同一个线程池里，并且提交的任务迟迟没有开始（线程池饿死）
+     */
+    boolean isStarved() {
+        return starved;
+    }
+
+    /**
+     * 任务里抛出了异常（worker本身的异常已经被wrapper处理，这里是callback等抛出的），在beginWork里抛出
+     */
+    void checkFailure() throws ExecutionException {
+        Throwable t = failure;
+        if (t != null) {
+            throw new ExecutionException(t);
+        }
+    }
+
+    public long getExecutionId() {
+        return executionId;
+    }
+
+    public Map<String, WorkerWrapper> getAllWrappers() {
+        return graph.getAllWrappers();
+    }
+
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    public MetricsCollector getMetrics() {
+        return metrics;
+    }
+
+    public ExecutionTrace getTrace() {
+        return trace;
+    }
+
+    public DeadlineClock getClock() {
+        return clock;
+    }
+
+    public boolean isPrioritized() {
+        return prioritized;
+    }
+
+    public boolean isRoutingWorkload() {
+        return routingWorkload;
+    }
+
+    /**
+     * next能否在当前线程直接执行：按worker类型分流时，只有类型和当前线程所在的线程池一致才可以，否则要提交，
+     * 由线程池分流。不确定当前线程在哪个线程池时都提交
+     */
+    public boolean canRunInline(WorkerWrapper<?, ?> next) {
+        if (!routingWorkload) {
+            return true;
+        }
+        Workload running = RUNNING_WORKLOAD.get();
+        return running != null && (next.getWorkload() == Workload.CPU) == (running == Workload.CPU);
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public boolean isDropConsumedResults() {
+        return dropConsumedResults;
+    }
+
+    public CompletionListener getCompletionListener() {
+        return completionListener;
+    }
+
+    public CallbackDispatcher getCallbackDispatcher() {
+        return callbackDispatcher;
+    }
+
+    public CheckpointStore getCheckpointStore() {
+        return checkpointStore;
+    }
+
+    public String getCheckpointId() {
+        return checkpointId;
+    }
+
+    /**
+     * @return 有metrics或trace时返回当前纳秒时间，否则返回0
+     */
+    public long timestamp() {
+        return timed ? System.nanoTime() : 0;
+    }
+
+    private void done() {
+        if (pending.decrementAndGet() == 0) {
+            Thread thread = waiter;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    private Task acquireTask() {
+        synchronized (taskLock) {
+            Task task = freeTasks;
+            if (task != null) {
+                freeTasks = task.next;
+                task.next = null;
+                return task;
+            }
+        }
+        return new Task(this, false);
+    }
+
+    private void releaseTask(Task task) {
+        if (task.helped) {
+            return;
+        }
+        task.fromWrapper = null;
+        task.wrapper = null;
+        task.jfrEvent = null;
+        synchronized (taskLock) {
+            task.next = freeTasks;
+            freeTasks = task;
+        }
+    }
+
+    /**
+     * 可复用的任务对象，代替每条边一个的CompletableFuture和lambda
+     */
+    private static final class Task implements DeadlineTask, WorkloadTask {
+
+        private static final AtomicIntegerFieldUpdater<Task> CLAIMED = AtomicIntegerFieldUpdater.newUpdater(Task.class, "claimed");
+
+        private final ExecutionContext context;
+
+        /**
+         * 同时交给了线程池和等待线程，先拿到的执行
+         */
+        private final boolean helped;
+
+        private volatile int claimed;
+
+        private WorkerWrapper fromWrapper;
+
+        private WorkerWrapper wrapper;
+
+        private long remainTime;
+
+        /**
+         * 提交到线程池的时间，没有安装metrics和trace时为0
+         */
+        private long enqueueTime;
+
+        /**
+         * 绝对截止时间，只有按截止时间调度的线程池才会计算
+         */
+        private long deadline;
+
+        private long latestStartTime;
+
+        /**
+         * 按worker类型分流的线程池按哪种类型处理了这个任务，提交时由线程池通过getWorkload决定
+         */
+        private Workload routed;
+
+        /**
+         * 排队的jfr事件，事件未开启时为null
+         */
+        private Object jfrEvent;
+
+        private Task next;
+
+        private Task(ExecutionContext context, boolean helped) {
+            this.context = context;
+            this.helped = helped;
+        }
+
+        @Override
+        public long getDeadline() {
+            return deadline;
+        }
+
+        @Override
+        public long getLatestStartTime() {
+            return latestStartTime;
+        }
+
+        @Override
+        public Workload getWorkload() {
+            WorkerWrapper wrapper = this.wrapper;
+            Workload workload = wrapper == null ? Workload.AUTO : wrapper.getWorkload();
+            routed = workload == Workload.CPU ? Workload.CPU : Workload.BLOCKING;
+            return workload;
+        }
+
+        /**
+         * 剩余时间按0处理，wrapper不执行worker直接超时，下游也随之超时
+         */
+        @Override
+        public void expire() {
+            remainTime = 0;
+            run();
+        }
+
+        @Override
+        public void run() {
+            if (helped && !CLAIMED.compareAndSet(this, 0, 1)) {
+                return;
+            }
+            WorkerWrapper fromWrapper = this.fromWrapper;
+            WorkerWrapper wrapper = this.wrapper;
+            long remainTime = this.remainTime;
+            long enqueueTime = this.enqueueTime;
+            Object jfrEvent = this.jfrEvent;
+            // 被等待线程拿去执行的任务不在分流后的线程池里
+            Workload routed = helped ? null : this.routed;
+            // 字段已经取出，任务对象可以立刻给别的提交复用
+            context.releaseTask(this);
+            if (jfrEvent != null) {
+                JfrEvents.endQueued(jfrEvent, context.executionId, wrapper);
+            }
+            if (enqueueTime != 0) {
+                context.metrics.onQueueWait(wrapper, System.nanoTime() - enqueueTime);
+            }
+            if (context.nested && !context.started) {
+                context.started = true;
+            }
+            ExecutorService previous = RUNNING_ON.get();
+            RUNNING_ON.set(context.executorService);
+            Workload previousWorkload = null;
+            if (context.routingWorkload) {
+                previousWorkload = RUNNING_WORKLOAD.get();
+                RUNNING_WORKLOAD.set(routed);
+            }
+            try {
+                wrapper.work(context, fromWrapper, remainTime, enqueueTime);
+            } catch (Throwable t) {
+                if (context.failure == null) {
+                    context.failure = t;
+                }
+            } finally {
+                if (context.routingWorkload) {
+                    RUNNING_WORKLOAD.set(previousWorkload);
+                }
+                RUNNING_ON.set(previous);
+                context.done();
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.poldroc.async.executor;
+
+import com.poldroc.async.callback.CompletionListener;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 一次异步执行里按完成顺序产出的wrapper，由 {@link Async#beginWorkStream} 返回
+ * <p>
+ * 多个worker线程写入、一个调用线程读取，底层是无锁队列；读取端在队列为空时park，有新结果或执行结束时被唤醒。
+ * 每个wrapper只会出现一次，结果从 {@link WorkerWrapper#getWorkResult()} 取。
+ * 同一组wrapper的下一次执行会复用result对象，所以需要在下一次执行开始前处理完
+ */
+public class ResultStream implements CompletionListener {
+
+    private final ConcurrentLinkedQueue<WorkerWrapper<?, ?>> completed = new ConcurrentLinkedQueue<>();
+
+    private volatile Thread consumer;
+
+    private volatile boolean finished;
+
+    private volatile boolean success;
+
+    private volatile Throwable failure;
+
+    ResultStream() {
+    }
+
+    @Override
+    public void onComplete(WorkerWrapper<?, ?> wrapper) {
+        completed.offer(wrapper);
+        Thread thread = consumer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * 整个执行结束
+     */
+    void finish(boolean success, Throwable failure) {
+        this.success = success;
+        this.failure = failure;
+        this.finished = true;
+        Thread thread = consumer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * 取下一个已经完成的wrapper，没有时立即返回null
+     */
+    public WorkerWrapper<?, ?> poll() {
+        return completed.poll();
+    }
+
+    /**
+     * 取下一个已经完成的wrapper，没有时阻塞等待
+     *
+     * @return 执行已经结束并且所有结果都已经取完时返回null
+     */
+    public WorkerWrapper<?, ?> take() throws InterruptedException {
+        return take(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 取下一个已经完成的wrapper，最多等待timeout
+     *
+     * @return 等待超时，或执行已经结束并且所有结果都已经取完时返回null
+     */
+    public WorkerWrapper<?, ?> take(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + Math.min(unit.toNanos(timeout), Long.MAX_VALUE >> 2);
+        for (; ; ) {
+            WorkerWrapper<?, ?> wrapper = completed.poll();
+            if (wrapper != null) {
+                return wrapper;
+            }
+            if (finished) {
+                // finish之前的结果都已经入队，再取一次
+                return completed.poll();
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                return null;
+            }
+            consumer = Thread.currentThread();
+            // 先登记再检查，避免写入端在登记前入队而错过唤醒
+            if (completed.isEmpty() && !finished) {
+                LockSupport.parkNanos(this, left);
+            }
+            consumer = null;
+        }
+    }
+
+    /**
+     * 执行是否已经结束，结束后仍可能有没取完的结果
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * 阻塞等待执行结束，不消费结果
+     *
+     * @return 同 {@link Async#beginWork}，没有超时返回true
+     */
+    public boolean await() throws ExecutionException, InterruptedException {
+        while (!finished) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            consumer = Thread.currentThread();
+            if (!finished) {
+                LockSupport.park(this);
+            }
+            consumer = null;
+        }
+        Throwable t = failure;
+        if (t instanceof ExecutionException) {
+            throw (ExecutionException) t;
+        }
+        if (t instanceof InterruptedException) {
+            throw (InterruptedException) t;
+        }
+        if (t != null) {
+            throw new ExecutionException(t);
+        }
+        return success;
+    }
+}
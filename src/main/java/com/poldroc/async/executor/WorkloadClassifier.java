@@ -0,0 +1,145 @@
+package com.poldroc.async.executor;
+
+import com.poldroc.async.worker.Workload;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按worker的类统计CPU时间占执行时间的比例，自动把worker分为计算型和阻塞型
+ * <p>
+ * 用 {@link ThreadMXBean} 读执行线程在worker执行前后的CPU时间，和墙上时间一起算出比例，指数加权平均。
+ * 同时执行的worker比核数多时，纯计算的worker也只能分到一部分CPU，比例按 核数/同时执行数 折算，
+ * 否则在扩展线程池里和别的worker抢核的计算型worker会被误判为阻塞型。
+ * 至少有 {@value #MIN_SAMPLES} 个样本后才分类：比例不低于75%是CPU型，不高于50%是阻塞型，
+ * 中间的保持原来的分类（第一次按阻塞型），避免在两个线程池之间来回切换。
+ * 同一处lambda创建的worker是同一个类，共用一份统计。JVM不支持线程CPU时间时不分类，全部按AUTO处理
+ */
+public final class WorkloadClassifier {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * 当前JVM能否读线程的CPU时间
+     */
+    public static final boolean SUPPORTED = enableCpuTime();
+
+    private static final int MIN_SAMPLES = 4;
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 正在被测量的worker执行数
+     */
+    private static final AtomicInteger RUNNING = new AtomicInteger();
+
+    /**
+     * 比例按1/1024保存
+     */
+    private static final int SCALE = 1024;
+
+    private static final int CPU_THRESHOLD = SCALE * 3 / 4;
+
+    private static final int BLOCKING_THRESHOLD = SCALE / 2;
+
+    private static final ClassValue<Profile> PROFILES = new ClassValue<Profile>() {
+        @Override
+        protected Profile computeValue(Class<?> type) {
+            return new Profile();
+        }
+    };
+
+    private WorkloadClassifier() {
+    }
+
+    /**
+     * @return 当前线程的CPU时间，纳秒；不支持时返回-1
+     */
+    public static long currentThreadCpuTime() {
+        return SUPPORTED ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * worker开始执行，之后必须调用 {@link #exit(Object, int, long, long)}
+     *
+     * @return 包括自己在内正在执行的数量
+     */
+    public static int enter() {
+        return RUNNING.incrementAndGet();
+    }
+
+    /**
+     * worker执行结束，记录这次执行
+     *
+     * @param entered   enter的返回值
+     * @param cpuBegin  开始时线程的CPU时间
+     * @param wallBegin 开始时的System.nanoTime
+     */
+    public static void exit(Object worker, int entered, long cpuBegin, long wallBegin) {
+        long cpuNanos = currentThreadCpuTime() - cpuBegin;
+        long wallNanos = System.nanoTime() - wallBegin;
+        int running = RUNNING.getAndDecrement();
+        record(worker, cpuNanos, wallNanos, (entered + running + 1) / 2);
+    }
+
+    private static void record(Object worker, long cpuNanos, long wallNanos, int concurrency) {
+        if (wallNanos <= 0 || cpuNanos < 0) {
+            return;
+        }
+        Profile profile = PROFILES.get(worker.getClass());
+        // 能分到的CPU是 核数/同时执行数，最多一个核
+        int sample = (int) Math.min(SCALE, cpuNanos * SCALE * Math.max(concurrency, CORES) / ((double) wallNanos * CORES));
+        // 并发执行时可能丢掉一个样本，不影响分类
+        int ratio = profile.samples == 0 ? sample : profile.ratio + (sample - profile.ratio) / 8;
+        profile.ratio = ratio;
+        int samples = profile.samples + 1;
+        profile.samples = samples;
+        if (samples < MIN_SAMPLES) {
+            return;
+        }
+        if (ratio >= CPU_THRESHOLD) {
+            profile.workload = Workload.CPU;
+        } else if (ratio <= BLOCKING_THRESHOLD || profile.workload == Workload.AUTO) {
+            profile.workload = Workload.BLOCKING;
+        }
+    }
+
+    /**
+     * @return worker当前的分类，样本不够时为AUTO
+     */
+    public static Workload classify(Object worker) {
+        return PROFILES.get(worker.getClass()).workload;
+    }
+
+    /**
+     * @return CPU时间占执行时间的比例，还没有样本时为-1
+     */
+    public static double getCpuRatio(Object worker) {
+        Profile profile = PROFILES.get(worker.getClass());
+        return profile.samples == 0 ? -1 : profile.ratio / (double) SCALE;
+    }
+
+    private static boolean enableCpuTime() {
+        try {
+            if (!THREADS.isCurrentThreadCpuTimeSupported()) {
+                return false;
+            }
+            if (!THREADS.isThreadCpuTimeEnabled()) {
+                THREADS.setThreadCpuTimeEnabled(true);
+            }
+            return THREADS.isThreadCpuTimeEnabled();
+        } catch (UnsupportedOperationException | SecurityException e) {
+            return false;
+        }
+    }
+
+    private static final class Profile {
+
+        private volatile int samples;
+
+        private volatile int ratio;
+
+        private volatile Workload workload = Workload.AUTO;
+    }
+}
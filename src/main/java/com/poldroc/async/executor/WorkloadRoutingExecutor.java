@@ -0,0 +1,135 @@
+package com.poldroc.async.executor;
+
+import com.poldroc.async.worker.Workload;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按worker类型分流的线程池
+ * <p>
+ * 计算型和阻塞型的worker共用一个有界线程池时，线程数怎么设都不对：按核数设，阻塞的worker占着线程让计算的排队；
+ * 设得很大，计算的worker又互相抢核。这里把CPU型的worker交给按核数固定大小的线程池，其余的交给按需扩展的线程池。
+ * <p>
+ * worker的类型可以在Builder里用 {@code workload(...)} 指定，默认AUTO由 {@link WorkloadClassifier} 根据执行时测得的
+ * CPU时间比例自动分类；还没有分类的worker和不是框架提交的任务都交给阻塞型的线程池，
+ * 阻塞的worker被误放进计算线程池的代价比反过来大得多
+ */
+public class WorkloadRoutingExecutor extends AbstractExecutorService {
+
+    private final ExecutorService cpuPool;
+
+    private final ExecutorService blockingPool;
+
+    private final LongAdder cpuTaskCount = new LongAdder();
+
+    private final LongAdder blockingTaskCount = new LongAdder();
+
+    /**
+     * 计算线程池大小为核数，阻塞线程池没有上限、空闲60秒回收，线程都是daemon
+     */
+    public WorkloadRoutingExecutor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public WorkloadRoutingExecutor(int cpuThreads) {
+        this(new ThreadPoolExecutor(cpuThreads, cpuThreads, 0L, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<>(), threadFactory("roc-async-cpu-")),
+                new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+                        new SynchronousQueue<>(), threadFactory("roc-async-blocking-")));
+    }
+
+    public WorkloadRoutingExecutor(ExecutorService cpuPool, ExecutorService blockingPool) {
+        if (cpuPool == null || blockingPool == null) {
+            throw new NullPointerException("pools cannot be null");
+        }
+        this.cpuPool = cpuPool;
+        this.blockingPool = blockingPool;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (command instanceof WorkloadTask && ((WorkloadTask) command).getWorkload() == Workload.CPU) {
+            cpuTaskCount.increment();
+            cpuPool.execute(command);
+        } else {
+            blockingTaskCount.increment();
+            blockingPool.execute(command);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        cpuPool.shutdown();
+        blockingPool.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = new ArrayList<>(cpuPool.shutdownNow());
+        pending.addAll(blockingPool.shutdownNow());
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return cpuPool.isShutdown() && blockingPool.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return cpuPool.isTerminated() && blockingPool.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!cpuPool.awaitTermination(timeout, unit)) {
+            return false;
+        }
+        return blockingPool.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    public ExecutorService getCpuPool() {
+        return cpuPool;
+    }
+
+    public ExecutorService getBlockingPool() {
+        return blockingPool;
+    }
+
+    /**
+     * @return 交给计算线程池的任务数
+     */
+    public long getCpuTaskCount() {
+        return cpuTaskCount.sum();
+    }
+
+    /**
+     * @return 交给阻塞线程池的任务数，包括还没有分类的
+     */
+    public long getBlockingTaskCount() {
+        return blockingTaskCount.sum();
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger index = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,14 @@
+package com.poldroc.async.executor;
+
+import com.poldroc.async.worker.Workload;
+
+/**
+ * 框架提交给线程池的任务，{@link WorkloadRoutingExecutor}据此选择线程池
+ */
+public interface WorkloadTask extends Runnable {
+
+    /**
+     * @return 要执行的worker的类型，还没有分类时为AUTO
+     */
+    Workload getWorkload();
+}
@@ -0,0 +1,86 @@
+package com.poldroc.async.jfr;
+
+import com.poldroc.async.worker.ResultState;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+/**
+ * Java Flight Recorder events of the engine.
+ * <p>
+ * this is the Java 8 variant and does nothing; the multi-release jar ships a Java 11 variant
+ * under META-INF/versions/11 that emits the events defined next to it. every call site is guarded by
+ * {@link #AVAILABLE}, a static final the JIT folds, so on Java 8 the calls are removed
+ * and on Java 11+ a disabled event costs one branch
+ */
+public final class JfrEvents {
+
+    /**
+     * whether flight recorder events are compiled in.
+     * initialized by a method call on purpose: a literal would be a compile-time constant and javac
+     * would inline this variant's value into the callers, so the Java 11 variant would never be consulted
+     */
+    public static final boolean AVAILABLE = available();
+
+    private JfrEvents() {
+    }
+
+    private static boolean available() {
+        return false;
+    }
+
+    /**
+     * @return an event handle to pass to {@link #endGraph}, or null when the event is disabled
+     */
+    public static Object beginGraph() {
+        return null;
+    }
+
+    public static void endGraph(Object event, long executionId, int nodeCount, long timeout, boolean success) {
+
+    }
+
+    /**
+     * called when a wrapper is submitted to the executor
+     *
+     * @return an event handle to pass to {@link #endQueued}, or null when the event is disabled
+     */
+    public static Object beginQueued() {
+        return null;
+    }
+
+    /**
+     * called when the submitted wrapper starts running
+     */
+    public static void endQueued(Object event, long executionId, WorkerWrapper<?, ?> wrapper) {
+
+    }
+
+    /**
+     * called right before the worker action
+     *
+     * @return an event handle to pass to {@link #endNode} and {@link #commitNode}, or null when the event is disabled
+     */
+    public static Object beginNode() {
+        return null;
+    }
+
+    /**
+     * called right after the worker action
+     */
+    public static void endNode(Object event) {
+
+    }
+
+    /**
+     * called once the result of the worker action is known
+     */
+    public static void commitNode(Object event, long executionId, WorkerWrapper<?, ?> wrapper, ResultState state) {
+
+    }
+
+    /**
+     * a wrapper that never ran: skipped, failed because of an upstream, or timed out
+     */
+    public static void nodeAborted(long executionId, WorkerWrapper<?, ?> wrapper, ResultState state, boolean skipped) {
+
+    }
+}
@@ -0,0 +1,245 @@
+package com.poldroc.async.jmx;
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.executor.WorkloadRoutingExecutor;
+import com.poldroc.async.metrics.HistogramMetricsCollector;
+import com.poldroc.async.metrics.MetricsCollector;
+import com.poldroc.async.metrics.WorkerStats;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * publishes the engine's state as MBeans on the platform MBean server, for jconsole and JMX-based monitoring
+ * <pre>
+ * com.poldroc.async:type=Engine                  graphs in flight, graphs per second, timeout ratio, graph latency
+ * com.poldroc.async:type=Executor,name=...       active, pool size, queued, completed and rejected tasks
+ * com.poldroc.async:type=Worker,name=...         per-worker latency percentiles, outcomes and concurrency
+ * </pre>
+ * call {@link #register()} or start the JVM with {@code -Droc.async.jmx=true}. registering installs a
+ * {@link HistogramMetricsCollector} unless a collector is already installed; worker beans are only available
+ * with a histogram collector. the framework's common pool is registered right away, the executor most recently
+ * passed to {@code Async.beginWork} is picked up automatically (up to {@value #MAX_DISCOVERED_EXECUTORS} of them,
+ * dropped again once terminated), others can be added with {@link #registerExecutor(String, ExecutorService)}.
+ * rejections are only counted for registered executors, whose rejected handler is wrapped until
+ * {@link #unregister()}; discovered executors keep their handler untouched and report a rejected count of -1.
+ * new workers and executors appear within one sampling period of {@value #SAMPLE_SECONDS} seconds
+ */
+public final class AsyncMonitoring {
+
+    public static final String DOMAIN = "com.poldroc.async";
+
+    private static final int SAMPLE_SECONDS = 5;
+
+    private static final int WINDOW_SECONDS = 60;
+
+    private static final int MAX_DISCOVERED_EXECUTORS = 16;
+
+    private static ScheduledExecutorService sampler;
+
+    private static EngineMonitor engine;
+
+    private static final Map<ExecutorService, Registration> executors = new IdentityHashMap<>();
+
+    private static final Map<String, ObjectName> workers = new HashMap<>();
+
+    /**
+     * the collector the worker beans read from
+     */
+    private static HistogramMetricsCollector workerSource;
+
+    private static int discoveredCount;
+
+    private AsyncMonitoring() {
+    }
+
+    public static synchronized boolean isRegistered() {
+        return sampler != null;
+    }
+
+    public static synchronized void register() {
+        if (sampler != null) {
+            return;
+        }
+        if (Async.getMetricsCollector() == MetricsCollector.NOOP) {
+            Async.setMetricsCollector(new HistogramMetricsCollector());
+        }
+        engine = new EngineMonitor(WINDOW_SECONDS / SAMPLE_SECONDS);
+        engine.sample();
+        register(name("type=Engine"), engine);
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "roc-async-jmx");
+            thread.setDaemon(true);
+            return thread;
+        });
+        registerExecutor("common", Async.getCommonPool());
+        sample();
+        sampler.scheduleAtFixedRate(AsyncMonitoring::sample, SAMPLE_SECONDS, SAMPLE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * publish an executor under {@code type=Executor,name=<name>}, registering the same executor again does nothing
+     */
+    public static synchronized void registerExecutor(String name, ExecutorService executor) {
+        register(name, executor, false);
+    }
+
+    public static synchronized void unregister() {
+        if (sampler == null) {
+            return;
+        }
+        sampler.shutdownNow();
+        sampler = null;
+        unregister(name("type=Engine"));
+        engine = null;
+        for (Registration registration : executors.values()) {
+            registration.monitor.close();
+            unregister(registration.name);
+        }
+        executors.clear();
+        discoveredCount = 0;
+        unregisterWorkers();
+    }
+
+    private static void register(String name, ExecutorService executor, boolean discovered) {
+        if (sampler == null) {
+            throw new IllegalStateException("monitoring is not registered");
+        }
+        if (executor == null || executors.containsKey(executor)) {
+            return;
+        }
+        ExecutorMonitor monitor = new ExecutorMonitor(executor, !discovered);
+        ObjectName objectName = name("type=Executor,name=" + ObjectName.quote(name));
+        register(objectName, monitor);
+        executors.put(executor, new Registration(objectName, monitor, discovered));
+        if (discovered) {
+            discoveredCount++;
+        }
+        if (executor instanceof WorkloadRoutingExecutor) {
+            // the router itself has no threads, show the two pools behind it
+            WorkloadRoutingExecutor router = (WorkloadRoutingExecutor) executor;
+            register(name + "-cpu", router.getCpuPool(), discovered);
+            register(name + "-blocking", router.getBlockingPool(), discovered);
+        }
+    }
+
+    private static synchronized void sample() {
+        if (sampler == null) {
+            return;
+        }
+        try {
+            engine.sample();
+            discoverExecutors();
+            syncWorkers();
+        } catch (RuntimeException e) {
+            // a failed sample must not cancel the periodic task
+        }
+    }
+
+    private static void discoverExecutors() {
+        List<ExecutorService> terminated = new ArrayList<>();
+        for (Map.Entry<ExecutorService, Registration> entry : executors.entrySet()) {
+            if (entry.getValue().discovered && entry.getKey().isTerminated()) {
+                terminated.add(entry.getKey());
+            }
+        }
+        for (ExecutorService executor : terminated) {
+            Registration registration = executors.remove(executor);
+            registration.monitor.close();
+            unregister(registration.name);
+            discoveredCount--;
+        }
+        ExecutorService last = Async.getExecutorService();
+        if (last != null && !last.isShutdown() && !executors.containsKey(last) && discoveredCount < MAX_DISCOVERED_EXECUTORS) {
+            register(last.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(last)), last, true);
+        }
+    }
+
+    private static void syncWorkers() {
+        MetricsCollector metrics = Async.getMetricsCollector();
+        HistogramMetricsCollector source = metrics instanceof HistogramMetricsCollector ? (HistogramMetricsCollector) metrics : null;
+        if (source != workerSource) {
+            // the collector was replaced, the old beans would show stale numbers
+            unregisterWorkers();
+            workerSource = source;
+        }
+        if (source == null) {
+            return;
+        }
+        for (WorkerStats stats : source.getWorkerStats()) {
+            if (!workers.containsKey(stats.getName())) {
+                ObjectName objectName = name("type=Worker,name=" + ObjectName.quote(stats.getName()));
+                register(objectName, new WorkerMonitor(stats));
+                workers.put(stats.getName(), objectName);
+            }
+        }
+    }
+
+    private static void unregisterWorkers() {
+        for (ObjectName objectName : workers.values()) {
+            unregister(objectName);
+        }
+        workers.clear();
+        workerSource = null;
+    }
+
+    private static ObjectName name(String properties) {
+        try {
+            return new ObjectName(DOMAIN + ":" + properties);
+        } catch (JMException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static void register(ObjectName name, Object bean) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(bean, name);
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot register " + name, e);
+        }
+    }
+
+    private static void unregister(ObjectName name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException ignored) {
+            // already gone
+        }
+    }
+
+    private static final class Registration {
+
+        private final ObjectName name;
+
+        private final ExecutorMonitor monitor;
+
+        /**
+         * picked up from Async rather than registered explicitly, dropped once terminated
+         */
+        private final boolean discovered;
+
+        private Registration(ObjectName name, ExecutorMonitor monitor, boolean discovered) {
+            this.name = name;
+            this.monitor = monitor;
+            this.discovered = discovered;
+        }
+    }
+}
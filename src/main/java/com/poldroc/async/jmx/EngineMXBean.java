@@ -0,0 +1,34 @@
+package com.poldroc.async.jmx;
+
+/**
+ * engine-wide view: graphs in flight, throughput and timeouts
+ * <p>
+ * rates cover the last minute and are refreshed every few seconds, latencies need a
+ * {@link com.poldroc.async.metrics.HistogramMetricsCollector} and are 0 without one
+ */
+public interface EngineMXBean {
+
+    long getInFlightGraphs();
+
+    long getGraphCount();
+
+    long getGraphTimeoutCount();
+
+    /**
+     * @return nested graphs that found their own executor saturated by waiting callers
+     */
+    long getStarvationCount();
+
+    double getGraphsPerSecond();
+
+    /**
+     * @return fraction of graphs that timed out in the last minute, 0-1
+     */
+    double getTimeoutRatio();
+
+    long getGraphLatencyP50Micros();
+
+    long getGraphLatencyP99Micros();
+
+    long getGraphLatencyMaxMicros();
+}
@@ -0,0 +1,107 @@
+package com.poldroc.async.jmx;
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.metrics.HistogramMetricsCollector;
+import com.poldroc.async.metrics.LatencyHistogram;
+import com.poldroc.async.metrics.MetricsCollector;
+
+class EngineMonitor implements EngineMXBean {
+
+    /**
+     * samples of the cumulative counters, one per sampling period, covering the rate window
+     */
+    private final long[] times;
+
+    private final long[] graphs;
+
+    private final long[] timeouts;
+
+    private int next;
+
+    private int size;
+
+    EngineMonitor(int samples) {
+        this.times = new long[samples + 1];
+        this.graphs = new long[samples + 1];
+        this.timeouts = new long[samples + 1];
+    }
+
+    synchronized void sample() {
+        times[next] = System.nanoTime();
+        graphs[next] = Async.getGraphCount();
+        timeouts[next] = Async.getGraphTimeoutCount();
+        next = (next + 1) % times.length;
+        size = Math.min(size + 1, times.length);
+    }
+
+    @Override
+    public long getInFlightGraphs() {
+        return Async.getInFlightGraphs();
+    }
+
+    @Override
+    public long getGraphCount() {
+        return Async.getGraphCount();
+    }
+
+    @Override
+    public long getGraphTimeoutCount() {
+        return Async.getGraphTimeoutCount();
+    }
+
+    @Override
+    public long getStarvationCount() {
+        return Async.getStarvationCount();
+    }
+
+    @Override
+    public synchronized double getGraphsPerSecond() {
+        if (size < 2) {
+            return 0;
+        }
+        int newest = newest();
+        int oldest = oldest();
+        long nanos = times[newest] - times[oldest];
+        return nanos <= 0 ? 0 : (graphs[newest] - graphs[oldest]) * 1e9 / nanos;
+    }
+
+    @Override
+    public synchronized double getTimeoutRatio() {
+        if (size < 2) {
+            return 0;
+        }
+        long count = graphs[newest()] - graphs[oldest()];
+        return count <= 0 ? 0 : (double) (timeouts[newest()] - timeouts[oldest()]) / count;
+    }
+
+    @Override
+    public long getGraphLatencyP50Micros() {
+        LatencyHistogram latency = graphLatency();
+        return latency == null ? 0 : WorkerMonitor.micros(latency.getValueAtPercentile(50));
+    }
+
+    @Override
+    public long getGraphLatencyP99Micros() {
+        LatencyHistogram latency = graphLatency();
+        return latency == null ? 0 : WorkerMonitor.micros(latency.getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getGraphLatencyMaxMicros() {
+        LatencyHistogram latency = graphLatency();
+        return latency == null ? 0 : WorkerMonitor.micros(latency.getMax());
+    }
+
+    private int newest() {
+        return (next - 1 + times.length) % times.length;
+    }
+
+    private int oldest() {
+        return (next - size + times.length) % times.length;
+    }
+
+    private static LatencyHistogram graphLatency() {
+        MetricsCollector metrics = Async.getMetricsCollector();
+        return metrics instanceof HistogramMetricsCollector ? ((HistogramMetricsCollector) metrics).getGraphLatency() : null;
+    }
+}
@@ -0,0 +1,23 @@
+package com.poldroc.async.jmx;
+
+/**
+ * saturation of one executor running graphs, values the executor type does not expose are -1
+ */
+public interface ExecutorMXBean {
+
+    String getType();
+
+    int getActiveCount();
+
+    int getPoolSize();
+
+    long getQueueSize();
+
+    long getCompletedTaskCount();
+
+    /**
+     * @return tasks rejected since the executor was registered, counted for explicitly registered
+     * {@link java.util.concurrent.ThreadPoolExecutor}s only, -1 otherwise
+     */
+    long getRejectedCount();
+}
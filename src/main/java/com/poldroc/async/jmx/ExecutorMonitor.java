@@ -0,0 +1,112 @@
+package com.poldroc.async.jmx;
+
+import com.poldroc.async.executor.EdfExecutor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+
+class ExecutorMonitor implements ExecutorMXBean {
+
+    private final ExecutorService executor;
+
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * handler replaced by the counting one, put back on unregister
+     */
+    private RejectedExecutionHandler originalHandler;
+
+    private RejectedExecutionHandler countingHandler;
+
+    /**
+     * @param countRejections wrap a {@link ThreadPoolExecutor}'s rejected handler to count rejections, only for
+     *                        executors the user registered; a discovered pool's handler is left alone
+     */
+    ExecutorMonitor(ExecutorService executor, boolean countRejections) {
+        this.executor = executor;
+        if (countRejections && executor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+            RejectedExecutionHandler original = pool.getRejectedExecutionHandler();
+            originalHandler = original;
+            countingHandler = (task, e) -> {
+                rejected.increment();
+                original.rejectedExecution(task, e);
+            };
+            pool.setRejectedExecutionHandler(countingHandler);
+        }
+    }
+
+    ExecutorService getExecutor() {
+        return executor;
+    }
+
+    void close() {
+        if (countingHandler != null) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+            if (pool.getRejectedExecutionHandler() == countingHandler) {
+                pool.setRejectedExecutionHandler(originalHandler);
+            }
+        }
+    }
+
+    @Override
+    public String getType() {
+        return executor.getClass().getName();
+    }
+
+    @Override
+    public int getActiveCount() {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getActiveCount();
+        }
+        if (executor instanceof ForkJoinPool) {
+            return ((ForkJoinPool) executor).getActiveThreadCount();
+        }
+        if (executor instanceof EdfExecutor) {
+            return ((EdfExecutor) executor).getActiveCount();
+        }
+        return -1;
+    }
+
+    @Override
+    public int getPoolSize() {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getPoolSize();
+        }
+        if (executor instanceof ForkJoinPool) {
+            return ((ForkJoinPool) executor).getPoolSize();
+        }
+        return -1;
+    }
+
+    @Override
+    public long getQueueSize() {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getQueue().size();
+        }
+        if (executor instanceof ForkJoinPool) {
+            ForkJoinPool pool = (ForkJoinPool) executor;
+            return pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount();
+        }
+        if (executor instanceof EdfExecutor) {
+            return ((EdfExecutor) executor).getQueueSize();
+        }
+        return -1;
+    }
+
+    @Override
+    public long getCompletedTaskCount() {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getCompletedTaskCount();
+        }
+        return -1;
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return countingHandler != null ? rejected.sum() : -1;
+    }
+}
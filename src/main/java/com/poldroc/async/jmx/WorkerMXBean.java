@@ -0,0 +1,34 @@
+package com.poldroc.async.jmx;
+
+/**
+ * latency, outcome and concurrency of one kind of worker, as keyed by the
+ * {@link com.poldroc.async.metrics.HistogramMetricsCollector}; latencies are cumulative
+ */
+public interface WorkerMXBean {
+
+    String getName();
+
+    int getActiveCount();
+
+    int getPeakActiveCount();
+
+    long getExecutionP50Micros();
+
+    long getExecutionP90Micros();
+
+    long getExecutionP99Micros();
+
+    long getExecutionMaxMicros();
+
+    long getQueueWaitP99Micros();
+
+    long getSuccessCount();
+
+    long getTimeoutCount();
+
+    long getExceptionCount();
+
+    long getSkippedCount();
+
+    long getCancelledCount();
+}
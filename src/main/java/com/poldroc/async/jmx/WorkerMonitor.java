@@ -0,0 +1,83 @@
+package com.poldroc.async.jmx;
+
+import com.poldroc.async.metrics.WorkerStats;
+
+import java.util.concurrent.TimeUnit;
+
+class WorkerMonitor implements WorkerMXBean {
+
+    private final WorkerStats stats;
+
+    WorkerMonitor(WorkerStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public String getName() {
+        return stats.getName();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return stats.getActiveCount();
+    }
+
+    @Override
+    public int getPeakActiveCount() {
+        return stats.getPeakActiveCount();
+    }
+
+    @Override
+    public long getExecutionP50Micros() {
+        return micros(stats.getExecution().getValueAtPercentile(50));
+    }
+
+    @Override
+    public long getExecutionP90Micros() {
+        return micros(stats.getExecution().getValueAtPercentile(90));
+    }
+
+    @Override
+    public long getExecutionP99Micros() {
+        return micros(stats.getExecution().getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getExecutionMaxMicros() {
+        return micros(stats.getExecution().getMax());
+    }
+
+    @Override
+    public long getQueueWaitP99Micros() {
+        return micros(stats.getQueueWait().getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getSuccessCount() {
+        return stats.getSuccessCount();
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        return stats.getTimeoutCount();
+    }
+
+    @Override
+    public long getExceptionCount() {
+        return stats.getExceptionCount();
+    }
+
+    @Override
+    public long getSkippedCount() {
+        return stats.getSkippedCount();
+    }
+
+    @Override
+    public long getCancelledCount() {
+        return stats.getCancelledCount();
+    }
+
+    static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
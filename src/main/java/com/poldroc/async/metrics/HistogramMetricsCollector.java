@@ -0,0 +1,105 @@
+package com.poldroc.async.metrics;
+
+import com.poldroc.async.worker.ResultState;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * default {@link MetricsCollector} keeping per-worker {@link LatencyHistogram}s in memory.
+ * <p>
+ * workers are grouped by worker class name unless another key function is given,
+ * wrapper ids are usually random so they are a poor default key for per-request graphs
+ */
+public class HistogramMetricsCollector implements MetricsCollector {
+
+    private final Function<WorkerWrapper<?, ?>, String> keyFunction;
+
+    private final ConcurrentMap<String, WorkerStats> workers = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram graphLatency = new LatencyHistogram();
+
+    private final LongAdder graphSuccess = new LongAdder();
+
+    private final LongAdder graphTimeout = new LongAdder();
+
+    public HistogramMetricsCollector() {
+        this(wrapper -> wrapper.getWorker().getClass().getName());
+    }
+
+    public HistogramMetricsCollector(Function<WorkerWrapper<?, ?>, String> keyFunction) {
+        this.keyFunction = keyFunction;
+    }
+
+    @Override
+    public void onQueueWait(WorkerWrapper<?, ?> wrapper, long nanos) {
+        stats(wrapper).getQueueWait().record(nanos);
+    }
+
+    @Override
+    public void onStart(WorkerWrapper<?, ?> wrapper) {
+        stats(wrapper).started();
+    }
+
+    @Override
+    public void onExecution(WorkerWrapper<?, ?> wrapper, long nanos) {
+        WorkerStats stats = stats(wrapper);
+        stats.finished();
+        stats.getExecution().record(nanos);
+    }
+
+    @Override
+    public void onResult(WorkerWrapper<?, ?> wrapper, ResultState state, boolean skipped) {
+        stats(wrapper).recordResult(state, skipped);
+    }
+
+    @Override
+    public void onCancelled(WorkerWrapper<?, ?> wrapper) {
+        stats(wrapper).recordCancelled();
+    }
+
+    @Override
+    public void onGraph(long nanos, boolean success) {
+        graphLatency.record(nanos);
+        if (success) {
+            graphSuccess.increment();
+        } else {
+            graphTimeout.increment();
+        }
+    }
+
+    public WorkerStats getWorkerStats(String key) {
+        return workers.get(key);
+    }
+
+    public Collection<WorkerStats> getWorkerStats() {
+        return Collections.unmodifiableCollection(workers.values());
+    }
+
+    public LatencyHistogram getGraphLatency() {
+        return graphLatency;
+    }
+
+    public long getGraphSuccessCount() {
+        return graphSuccess.sum();
+    }
+
+    public long getGraphTimeoutCount() {
+        return graphTimeout.sum();
+    }
+
+    private WorkerStats stats(WorkerWrapper<?, ?> wrapper) {
+        String key = keyFunction.apply(wrapper);
+        // plain get first, computeIfAbsent locks the bin even when the key is present on JDK 8
+        WorkerStats stats = workers.get(key);
+        if (stats == null) {
+            stats = workers.computeIfAbsent(key, WorkerStats::new);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,70 @@
+package com.poldroc.async.metrics;
+
+import com.poldroc.async.worker.ResultState;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+/**
+ * metrics SPI, invoked by the engine on every wrapper transition.
+ * <p>
+ * all methods are called on the hot path and must not block.
+ * when the installed collector is {@link #NOOP} the engine does not even read the clock
+ *
+ * @see com.poldroc.async.executor.Async#setMetricsCollector(MetricsCollector)
+ */
+public interface MetricsCollector {
+
+    /**
+     * collector that records nothing
+     */
+    MetricsCollector NOOP = new MetricsCollector() {
+    };
+
+    /**
+     * time a wrapper spent in the executor queue between being submitted and starting to run
+     */
+    default void onQueueWait(WorkerWrapper<?, ?> wrapper, long nanos) {
+
+    }
+
+    /**
+     * a wrapper is about to enter {@link com.poldroc.async.worker.IWorker#action},
+     * always followed by {@link #onExecution} on the same thread
+     */
+    default void onStart(WorkerWrapper<?, ?> wrapper) {
+
+    }
+
+    /**
+     * time spent inside {@link com.poldroc.async.worker.IWorker#action}
+     */
+    default void onExecution(WorkerWrapper<?, ?> wrapper, long nanos) {
+
+    }
+
+    /**
+     * the wrapper reached its final state
+     *
+     * @param skipped true if the wrapper did not run because its next chain had already started
+     */
+    default void onResult(WorkerWrapper<?, ?> wrapper, ResultState state, boolean skipped) {
+
+    }
+
+    /**
+     * the wrapper reached its final state by being cancelled: the quorum or first-success join it feeds was
+     * already satisfied by other upstreams. the result state is EXCEPTION with a
+     * {@link com.poldroc.async.exception.CancelledException}
+     */
+    default void onCancelled(WorkerWrapper<?, ?> wrapper) {
+
+    }
+
+    /**
+     * end-to-end latency of one Async.beginWork call
+     *
+     * @param success false if the whole graph timed out
+     */
+    default void onGraph(long nanos, boolean success) {
+
+    }
+}
@@ -0,0 +1,138 @@
+package com.poldroc.async.metrics;
+
+import com.poldroc.async.worker.ResultState;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * statistics of one worker collected by {@link HistogramMetricsCollector}, all times in nanoseconds
+ */
+public class WorkerStats {
+
+    private final String name;
+
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+
+    private final LatencyHistogram execution = new LatencyHistogram();
+
+    private final LongAdder success = new LongAdder();
+
+    private final LongAdder timeout = new LongAdder();
+
+    private final LongAdder exception = new LongAdder();
+
+    private final LongAdder skipped = new LongAdder();
+
+    private final LongAdder cancelled = new LongAdder();
+
+    /**
+     * workers currently inside action, and the highest value seen
+     */
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicInteger peakActive = new AtomicInteger();
+
+    public WorkerStats(String name) {
+        this.name = name;
+    }
+
+    void started() {
+        int current = active.incrementAndGet();
+        int peak = peakActive.get();
+        while (current > peak && !peakActive.compareAndSet(peak, current)) {
+            peak = peakActive.get();
+        }
+    }
+
+    void finished() {
+        active.decrementAndGet();
+    }
+
+    void recordResult(ResultState state, boolean isSkipped) {
+        if (isSkipped) {
+            skipped.increment();
+            return;
+        }
+        switch (state) {
+            case SUCCESS:
+                success.increment();
+                break;
+            case TIMEOUT:
+                timeout.increment();
+                break;
+            case EXCEPTION:
+                exception.increment();
+                break;
+            default:
+                break;
+        }
+    }
+
+    void recordCancelled() {
+        cancelled.increment();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    public LatencyHistogram getExecution() {
+        return execution;
+    }
+
+    public long getSuccessCount() {
+        return success.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeout.sum();
+    }
+
+    public long getExceptionCount() {
+        return exception.sum();
+    }
+
+    public long getSkippedCount() {
+        return skipped.sum();
+    }
+
+    /**
+     * @return losers cancelled after the join they fed was satisfied by other upstreams
+     */
+    public long getCancelledCount() {
+        return cancelled.sum();
+    }
+
+    /**
+     * @return workers of this kind running right now
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * @return highest number of workers of this kind that ran at the same time
+     */
+    public int getPeakActiveCount() {
+        return peakActive.get();
+    }
+
+    @Override
+    public String toString() {
+        return "WorkerStats{" +
+                "name='" + name + '\'' +
+                ", success=" + getSuccessCount() +
+                ", timeout=" + getTimeoutCount() +
+                ", exception=" + getExceptionCount() +
+                ", skipped=" + getSkippedCount() +
+                ", cancelled=" + getCancelledCount() +
+                ", queueWait=" + queueWait +
+                ", execution=" + execution +
+                '}';
+    }
+}
@@ -0,0 +1,89 @@
+package com.poldroc.async.timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 粗粒度的缓存时钟：后台线程按固定周期把 {@link System#nanoTime()} 写进一个volatile字段，读取只是一次volatile读
+ * <p>
+ * 和原来的SystemClock不同，后台线程只在有执行进行中时走时，没有执行时一直park，不会每毫秒空转。
+ * 没有执行进行中时（比如超时后还没停下来的任务）读取直接退回nanoTime。
+ * 精度就是走时周期，适合nanoTime本身很慢的平台（部分虚拟机的时钟源），一般情况下用 {@link MonotonicClock} 即可
+ */
+public class CachedClock implements DeadlineClock {
+
+    private final long periodNanos;
+
+    /**
+     * 进行中的执行数
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * 缓存的读数，后台线程停止走时时置为0，读到0时退回nanoTime
+     */
+    private volatile long now;
+
+    private volatile Thread ticker;
+
+    /**
+     * @param period 走时周期
+     */
+    public CachedClock(long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be positive");
+        }
+        this.periodNanos = unit.toNanos(period);
+    }
+
+    @Override
+    public long nanoTime() {
+        // 读路径只有一次volatile读
+        long cached = now;
+        return cached != 0 ? cached : System.nanoTime();
+    }
+
+    @Override
+    public void executionStarted() {
+        if (inFlight.getAndIncrement() == 0) {
+            // 停过一段时间，先校准一次，不等后台线程
+            now = System.nanoTime();
+            Thread thread = ticker;
+            if (thread == null) {
+                startTicker();
+            } else {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    @Override
+    public void executionFinished() {
+        inFlight.decrementAndGet();
+    }
+
+    private synchronized void startTicker() {
+        if (ticker != null) {
+            return;
+        }
+        Thread thread = new Thread(this::tick, "Cached Clock");
+        thread.setDaemon(true);
+        ticker = thread;
+        thread.start();
+    }
+
+    private void tick() {
+        for (; ; ) {
+            if (inFlight.get() == 0) {
+                // 和executionStarted并发时可能把刚校准的读数清掉，这段时间读取退回nanoTime，仍然正确；
+                // executionStarted在park之前unpark也不会丢：permit会让park立即返回
+                now = 0;
+                LockSupport.park(this);
+                continue;
+            }
+            now = System.nanoTime();
+            LockSupport.parkNanos(this, periodNanos);
+        }
+    }
+}
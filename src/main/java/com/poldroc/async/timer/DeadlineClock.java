@@ -0,0 +1,27 @@
+package com.poldroc.async.timer;
+
+/**
+ * 计算剩余时间（remainTime）用的时钟
+ * <p>
+ * 必须是单调的：返回值只用来求两次读数的差，不能随系统时间（NTP校时等）跳变。
+ * metrics和trace需要精确计时，始终直接使用 {@link System#nanoTime()}，不经过这里
+ */
+public interface DeadlineClock {
+
+    /**
+     * @return 单调递增的纳秒时间，原点任意
+     */
+    long nanoTime();
+
+    /**
+     * 一次beginWork开始，缓存类的时钟据此决定是否需要走时
+     */
+    default void executionStarted() {
+    }
+
+    /**
+     * 一次beginWork结束（正常结束或超时），与 {@link #executionStarted()} 成对调用
+     */
+    default void executionFinished() {
+    }
+}
@@ -0,0 +1,19 @@
+package com.poldroc.async.timer;
+
+/**
+ * 直接读 {@link System#nanoTime()}，默认的时钟
+ * <p>
+ * 主流平台上nanoTime走vDSO，不进内核也没有共享写入，多线程下不会争用
+ */
+public final class MonotonicClock implements DeadlineClock {
+
+    public static final MonotonicClock INSTANCE = new MonotonicClock();
+
+    private MonotonicClock() {
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+}
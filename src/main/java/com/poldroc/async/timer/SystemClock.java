@@ -9,7 +9,11 @@ import java.util.concurrent.atomic.AtomicLong;
  * 替代 System.currentTimeMillis(),用于解决高并发下System.currentTimeMillis卡顿
  * <p>
  * 避免在多线程环境下多次系统调用带来的性能开销
+ *
+ * @deprecated 引擎已经不再使用：这里是墙上时间，会随NTP跳变，而且后台线程一旦启动就每毫秒醒来一次。
+ * 计算耗时请用 {@link DeadlineClock}，需要缓存读数时用只在执行期间走时的 {@link CachedClock}
  */
+@Deprecated
 public class SystemClock {
     private final int period;
 
@@ -0,0 +1,146 @@
+package com.poldroc.async.trace;
+
+import java.util.*;
+
+/**
+ * the chain of wrappers that determined the latency of one traced execution.
+ * <p>
+ * starting from the wrapper that finished last, each step follows the upstream whose arrival
+ * fired the wrapper, so the segments are in execution order and their contributions add up to
+ * the time between the start of the execution and the end of the last wrapper:
+ * <ul>
+ *     <li>join wait: from the upstream finishing (or the execution starting, for roots) until this wrapper was
+ *     dispatched, i.e. callbacks, sibling submission and waiting for the join lock</li>
+ *     <li>queue wait: from being dispatched until a thread started running it</li>
+ *     <li>execution: the worker action itself</li>
+ * </ul>
+ */
+public class CriticalPath {
+
+    private final List<Segment> segments;
+
+    private final long tailNanos;
+
+    private final long totalNanos;
+
+    private CriticalPath(List<Segment> segments, long tailNanos, long totalNanos) {
+        this.segments = segments;
+        this.tailNanos = tailNanos;
+        this.totalNanos = totalNanos;
+    }
+
+    /**
+     * analyze a finished trace
+     */
+    public static CriticalPath of(ExecutionTrace trace) {
+        List<ExecutionTrace.NodeSpan> spans = trace.getSpans();
+        Map<Object, ExecutionTrace.NodeSpan> byWrapper = new IdentityHashMap<>();
+        ExecutionTrace.NodeSpan last = null;
+        for (ExecutionTrace.NodeSpan span : spans) {
+            byWrapper.put(span.getWrapper(), span);
+            if (last == null || span.getEndNanos() > last.getEndNanos()) {
+                last = span;
+            }
+        }
+        long total = trace.getDurationNanos();
+        if (last == null) {
+            return new CriticalPath(Collections.emptyList(), total, total);
+        }
+
+        LinkedList<Segment> segments = new LinkedList<>();
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        ExecutionTrace.NodeSpan span = last;
+        while (span != null && visited.add(span.getWrapper())) {
+            ExecutionTrace.NodeSpan upstream = span.getFromWrapper() == null ? null : byWrapper.get(span.getFromWrapper());
+            long readyNanos = upstream == null ? trace.getStartNanos() : upstream.getEndNanos();
+            segments.addFirst(new Segment(span,
+                    Math.max(0, span.getDispatchNanos() - readyNanos),
+                    Math.max(0, span.getStartNanos() - span.getDispatchNanos()),
+                    span.getEndNanos() - span.getStartNanos()));
+            span = upstream;
+        }
+        long tail = trace.getEndNanos() == 0 ? 0 : Math.max(0, trace.getEndNanos() - last.getEndNanos());
+        return new CriticalPath(new ArrayList<>(segments), tail, total);
+    }
+
+    /**
+     * @return segments in execution order, the first one is a root
+     */
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * time between the last wrapper finishing and Async.beginWork noticing it
+     */
+    public long getTailNanos() {
+        return tailNanos;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("CriticalPath{total=").append(totalNanos / 1000).append("us");
+        for (Segment segment : segments) {
+            sb.append("\n  ").append(segment);
+        }
+        return sb.append("\n  tail=").append(tailNanos / 1000).append("us}").toString();
+    }
+
+    /**
+     * one wrapper on the critical path, all times in nanoseconds
+     */
+    public static class Segment {
+
+        private final String id;
+
+        private final String workerName;
+
+        private final long joinWaitNanos;
+
+        private final long queueWaitNanos;
+
+        private final long executionNanos;
+
+        Segment(ExecutionTrace.NodeSpan span, long joinWaitNanos, long queueWaitNanos, long executionNanos) {
+            this.id = span.getId();
+            this.workerName = span.getWorkerName();
+            this.joinWaitNanos = joinWaitNanos;
+            this.queueWaitNanos = queueWaitNanos;
+            this.executionNanos = executionNanos;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getWorkerName() {
+            return workerName;
+        }
+
+        public long getJoinWaitNanos() {
+            return joinWaitNanos;
+        }
+
+        public long getQueueWaitNanos() {
+            return queueWaitNanos;
+        }
+
+        public long getExecutionNanos() {
+            return executionNanos;
+        }
+
+        public long getTotalNanos() {
+            return joinWaitNanos + queueWaitNanos + executionNanos;
+        }
+
+        @Override
+        public String toString() {
+            return id + " (" + workerName + ") join=" + joinWaitNanos / 1000 + "us queue=" + queueWaitNanos / 1000
+                    + "us exec=" + executionNanos / 1000 + "us";
+        }
+    }
+}
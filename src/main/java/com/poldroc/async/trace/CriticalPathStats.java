@@ -0,0 +1,151 @@
+package com.poldroc.async.trace;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * aggregates the critical paths of traced executions per graph shape,
+ * to find out which worker to optimize first.
+ * <p>
+ * a graph shape is identified by {@link com.poldroc.async.wrapper.WorkGraph#getShapeKey()},
+ * so per-request graphs built the same way share one entry; inside a shape workers are
+ * grouped by worker class name
+ */
+public class CriticalPathStats implements Consumer<ExecutionTrace> {
+
+    private final ConcurrentMap<String, ShapeStats> shapes = new ConcurrentHashMap<>();
+
+    @Override
+    public void accept(ExecutionTrace trace) {
+        String shape = trace.getShapeKey() == null ? "unknown" : trace.getShapeKey();
+        shapes.computeIfAbsent(shape, ShapeStats::new).add(trace.getCriticalPath());
+    }
+
+    public ShapeStats getShapeStats(String shapeKey) {
+        return shapes.get(shapeKey);
+    }
+
+    public Collection<ShapeStats> getShapeStats() {
+        return Collections.unmodifiableCollection(shapes.values());
+    }
+
+    /**
+     * critical path statistics of one graph shape
+     */
+    public static class ShapeStats {
+
+        private final String shapeKey;
+
+        private final LongAdder executions = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        private final ConcurrentMap<String, WorkerContribution> workers = new ConcurrentHashMap<>();
+
+        ShapeStats(String shapeKey) {
+            this.shapeKey = shapeKey;
+        }
+
+        void add(CriticalPath path) {
+            executions.increment();
+            totalNanos.add(path.getTotalNanos());
+            for (CriticalPath.Segment segment : path.getSegments()) {
+                workers.computeIfAbsent(segment.getWorkerName(), WorkerContribution::new).add(segment);
+            }
+        }
+
+        public String getShapeKey() {
+            return shapeKey;
+        }
+
+        public long getExecutions() {
+            return executions.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        /**
+         * @return workers sorted by their total contribution to the critical path, largest first
+         */
+        public List<WorkerContribution> getRanking() {
+            List<WorkerContribution> ranking = new ArrayList<>(workers.values());
+            ranking.sort(Comparator.comparingLong(WorkerContribution::getTotalNanos).reversed());
+            return ranking;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("ShapeStats{shape=").append(shapeKey)
+                    .append(", executions=").append(getExecutions());
+            for (WorkerContribution contribution : getRanking()) {
+                sb.append("\n  ").append(contribution);
+            }
+            return sb.append('}').toString();
+        }
+    }
+
+    /**
+     * accumulated critical path contribution of one worker, all times in nanoseconds
+     */
+    public static class WorkerContribution {
+
+        private final String workerName;
+
+        private final LongAdder onPath = new LongAdder();
+
+        private final LongAdder joinWaitNanos = new LongAdder();
+
+        private final LongAdder queueWaitNanos = new LongAdder();
+
+        private final LongAdder executionNanos = new LongAdder();
+
+        WorkerContribution(String workerName) {
+            this.workerName = workerName;
+        }
+
+        void add(CriticalPath.Segment segment) {
+            onPath.increment();
+            joinWaitNanos.add(segment.getJoinWaitNanos());
+            queueWaitNanos.add(segment.getQueueWaitNanos());
+            executionNanos.add(segment.getExecutionNanos());
+        }
+
+        public String getWorkerName() {
+            return workerName;
+        }
+
+        /**
+         * how many times the worker was on the critical path
+         */
+        public long getOnPathCount() {
+            return onPath.sum();
+        }
+
+        public long getJoinWaitNanos() {
+            return joinWaitNanos.sum();
+        }
+
+        public long getQueueWaitNanos() {
+            return queueWaitNanos.sum();
+        }
+
+        public long getExecutionNanos() {
+            return executionNanos.sum();
+        }
+
+        public long getTotalNanos() {
+            return getJoinWaitNanos() + getQueueWaitNanos() + getExecutionNanos();
+        }
+
+        @Override
+        public String toString() {
+            return workerName + " onPath=" + getOnPathCount() + " join=" + getJoinWaitNanos() / 1000
+                    + "us queue=" + getQueueWaitNanos() / 1000 + "us exec=" + getExecutionNanos() / 1000 + "us";
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.poldroc.async.trace;
+
+import com.poldroc.async.worker.ResultState;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * timeline of one traced execution: for every wrapper that reached a final state,
+ * when it was dispatched, when its worker started and ended, on which thread and with which result.
+ * <p>
+ * all times are {@link System#nanoTime()} values
+ */
+public class ExecutionTrace {
+
+    private final long executionId;
+
+    private final long startNanos;
+
+    private final long callerThreadId;
+
+    private final String callerThreadName;
+
+    private final Queue<NodeSpan> spans = new ConcurrentLinkedQueue<>();
+
+    private volatile long endNanos;
+
+    private volatile boolean success;
+
+    private volatile String shapeKey;
+
+    private volatile CriticalPath criticalPath;
+
+    public ExecutionTrace(long executionId) {
+        Thread thread = Thread.currentThread();
+        this.executionId = executionId;
+        this.callerThreadId = thread.getId();
+        this.callerThreadName = thread.getName();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * record a wrapper that reached its final state, called on the thread that finished it
+     *
+     * @param fromWrapper  the upstream whose arrival made this wrapper run or fail, null for roots
+     * @param dispatchTime when that arrival was submitted to the executor, 0 if unknown
+     * @param startTime    when the worker started, equal to endTime if it never ran
+     */
+    public void record(WorkerWrapper<?, ?> wrapper, WorkerWrapper<?, ?> fromWrapper, long dispatchTime,
+                       long startTime, long endTime, ResultState state, boolean skipped) {
+        Thread thread = Thread.currentThread();
+        spans.add(new NodeSpan(wrapper, fromWrapper, dispatchTime == 0 ? startTime : dispatchTime,
+                startTime, endTime, thread.getId(), thread.getName(), state, skipped));
+    }
+
+    void finish(boolean success) {
+        this.success = success;
+        this.endNanos = System.nanoTime();
+    }
+
+    public long getExecutionId() {
+        return executionId;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public long getEndNanos() {
+        return endNanos;
+    }
+
+    public long getDurationNanos() {
+        return endNanos - startNanos;
+    }
+
+    /**
+     * @return false if the execution timed out
+     */
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * @see com.poldroc.async.wrapper.WorkGraph#getShapeKey()
+     */
+    public String getShapeKey() {
+        return shapeKey;
+    }
+
+    public void setShapeKey(String shapeKey) {
+        this.shapeKey = shapeKey;
+    }
+
+    /**
+     * critical path of this execution, computed on first access after the execution finished
+     */
+    public CriticalPath getCriticalPath() {
+        CriticalPath path = criticalPath;
+        if (path == null) {
+            path = CriticalPath.of(this);
+            criticalPath = path;
+        }
+        return path;
+    }
+
+    public List<NodeSpan> getSpans() {
+        return new ArrayList<>(spans);
+    }
+
+    /**
+     * export as Chrome trace-event JSON, loadable in chrome://tracing or Perfetto.
+     * <p>
+     * every worker run is a complete event on the thread that ran it, queue wait is an async
+     * event in the "queue" category, and the whole execution is a complete event on the caller thread
+     */
+    public void writeChromeTrace(Writer out) throws IOException {
+        out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+        out.write("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":1,\"args\":{\"name\":");
+        writeString(out, "roc-async execution " + executionId + (shapeKey == null ? "" : " " + shapeKey));
+        out.write("}}");
+
+        Map<Long, String> threads = new LinkedHashMap<>();
+        threads.put(callerThreadId, callerThreadName);
+        for (NodeSpan span : spans) {
+            threads.put(span.threadId, span.threadName);
+        }
+        for (Map.Entry<Long, String> thread : threads.entrySet()) {
+            out.write(",\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + thread.getKey() + ",\"args\":{\"name\":");
+            writeString(out, thread.getValue());
+            out.write("}}");
+        }
+
+        out.write(",\n{\"name\":\"execution\",\"cat\":\"graph\",\"ph\":\"X\",\"pid\":1,\"tid\":" + callerThreadId
+                + ",\"ts\":0,\"dur\":" + micros(endNanos - startNanos)
+                + ",\"args\":{\"success\":" + success + "}}");
+
+        int asyncId = 0;
+        for (NodeSpan span : spans) {
+            asyncId++;
+            if (span.startNanos > span.dispatchNanos) {
+                out.write(",\n{\"name\":");
+                writeString(out, span.id);
+                out.write(",\"cat\":\"queue\",\"ph\":\"b\",\"id\":" + asyncId + ",\"pid\":1,\"tid\":" + span.threadId
+                        + ",\"ts\":" + micros(span.dispatchNanos - startNanos) + "}");
+                out.write(",\n{\"name\":");
+                writeString(out, span.id);
+                out.write(",\"cat\":\"queue\",\"ph\":\"e\",\"id\":" + asyncId + ",\"pid\":1,\"tid\":" + span.threadId
+                        + ",\"ts\":" + micros(span.startNanos - startNanos) + "}");
+            }
+            out.write(",\n{\"name\":");
+            writeString(out, span.id);
+            out.write(",\"cat\":\"worker\",\"ph\":\"X\",\"pid\":1,\"tid\":" + span.threadId
+                    + ",\"ts\":" + micros(span.startNanos - startNanos)
+                    + ",\"dur\":" + micros(span.endNanos - span.startNanos)
+                    + ",\"args\":{\"worker\":");
+            writeString(out, span.workerName);
+            out.write(",\"state\":\"" + span.state + "\",\"skipped\":" + span.skipped + ",\"from\":");
+            writeString(out, span.fromId);
+            out.write(",\"queueWaitUs\":" + micros(span.startNanos - span.dispatchNanos) + "}}");
+        }
+        out.write("\n]}\n");
+    }
+
+    public String toChromeTraceJson() {
+        StringWriter writer = new StringWriter();
+        try {
+            writeChromeTrace(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1000.0);
+    }
+
+    private static void writeString(Writer out, String s) throws IOException {
+        if (s == null) {
+            out.write("null");
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+
+    /**
+     * one wrapper in a traced execution
+     */
+    public static class NodeSpan {
+
+        private final WorkerWrapper<?, ?> wrapper;
+
+        private final String id;
+
+        private final String workerName;
+
+        private final WorkerWrapper<?, ?> fromWrapper;
+
+        private final String fromId;
+
+        private final long dispatchNanos;
+
+        private final long startNanos;
+
+        private final long endNanos;
+
+        private final long threadId;
+
+        private final String threadName;
+
+        private final ResultState state;
+
+        private final boolean skipped;
+
+        NodeSpan(WorkerWrapper<?, ?> wrapper, WorkerWrapper<?, ?> fromWrapper, long dispatchNanos, long startNanos,
+                 long endNanos, long threadId, String threadName, ResultState state, boolean skipped) {
+            this.wrapper = wrapper;
+            this.id = wrapper.getId();
+            this.workerName = wrapper.getWorker().getClass().getName();
+            this.fromWrapper = fromWrapper;
+            this.fromId = fromWrapper == null ? null : fromWrapper.getId();
+            this.dispatchNanos = dispatchNanos;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.threadId = threadId;
+            this.threadName = threadName;
+            this.state = state;
+            this.skipped = skipped;
+        }
+
+        public WorkerWrapper<?, ?> getWrapper() {
+            return wrapper;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getWorkerName() {
+            return workerName;
+        }
+
+        public WorkerWrapper<?, ?> getFromWrapper() {
+            return fromWrapper;
+        }
+
+        public String getFromId() {
+            return fromId;
+        }
+
+        public long getDispatchNanos() {
+            return dispatchNanos;
+        }
+
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        public long getEndNanos() {
+            return endNanos;
+        }
+
+        public long getThreadId() {
+            return threadId;
+        }
+
+        public String getThreadName() {
+            return threadName;
+        }
+
+        public ResultState getState() {
+            return state;
+        }
+
+        public boolean isSkipped() {
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.poldroc.async.trace;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * opt-in, sampled tracer of Async.beginWork executions.
+ * <p>
+ * a sampled execution records one {@link ExecutionTrace}; when it finishes and took at least
+ * the slow threshold, the trace is handed to the listener, e.g. to be written as a Chrome trace file:
+ * <pre>
+ *     Async.setTracer(new ExecutionTracer(0.01, 200, TimeUnit.MILLISECONDS,
+ *             trace -> Files.write(Paths.get("slow-" + trace.getExecutionId() + ".json"), ...)));
+ * </pre>
+ *
+ * @see com.poldroc.async.executor.Async#setTracer(ExecutionTracer)
+ */
+public class ExecutionTracer {
+
+    private final double sampleRate;
+
+    private final long slowThresholdNanos;
+
+    private final Consumer<ExecutionTrace> listener;
+
+    private volatile CriticalPathStats criticalPathStats;
+
+    /**
+     * trace a fraction of executions and report all of them
+     */
+    public ExecutionTracer(double sampleRate, Consumer<ExecutionTrace> listener) {
+        this(sampleRate, 0, TimeUnit.NANOSECONDS, listener);
+    }
+
+    /**
+     * @param sampleRate    fraction of executions to trace, 0-1
+     * @param slowThreshold only report sampled executions that took at least this long
+     * @param listener      receives finished traces on the thread that called Async.beginWork
+     */
+    public ExecutionTracer(double sampleRate, long slowThreshold, TimeUnit unit, Consumer<ExecutionTrace> listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener cannot be null");
+        }
+        this.sampleRate = sampleRate;
+        this.slowThresholdNanos = unit.toNanos(slowThreshold);
+        this.listener = listener;
+    }
+
+    /**
+     * aggregate the critical path of every sampled execution, regardless of the slow threshold
+     */
+    public ExecutionTracer criticalPathStats(CriticalPathStats criticalPathStats) {
+        this.criticalPathStats = criticalPathStats;
+        return this;
+    }
+
+    public CriticalPathStats getCriticalPathStats() {
+        return criticalPathStats;
+    }
+
+    /**
+     * @return a new trace if this execution is sampled, otherwise null
+     */
+    public ExecutionTrace sample(long executionId) {
+        if (sampleRate <= 0 || (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return null;
+        }
+        return new ExecutionTrace(executionId);
+    }
+
+    /**
+     * called once the sampled execution has finished
+     */
+    public void finish(ExecutionTrace trace, boolean success) {
+        trace.finish(success);
+        CriticalPathStats stats = criticalPathStats;
+        if (stats != null) {
+            stats.accept(trace);
+        }
+        if (trace.getDurationNanos() >= slowThresholdNanos) {
+            listener.accept(trace);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.poldroc.async.worker;
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.wrapper.CancellationToken;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * a map-style node: runs an element worker for every item of a collection and gathers the results,
+ * in input order, into the single result of this node
+ * <p>
+ * the collection is taken from the result of a source wrapper (usually the upstream) or, without a source,
+ * from this node's own param. at most {@code parallelism} elements are in flight on the executor at once,
+ * each one bounded by {@code elementTimeout}. an element that fails or times out contributes the element
+ * worker's {@link IWorker#defaultValue()}, unless {@code failFast} is set, in which case the whole node fails.
+ * the node itself stops early when its {@link CancellationToken} is cancelled
+ *
+ * @param <E> element type
+ * @param <R> element result type
+ */
+public class MapWorker<E, R> implements IWorker<Collection<? extends E>, List<R>> {
+
+    private final IWorker<? super E, ? extends R> elementWorker;
+
+    private final WorkerWrapper<?, ? extends Collection<? extends E>> source;
+
+    private final int parallelism;
+
+    private final long elementTimeoutNanos;
+
+    private final ExecutorService executorService;
+
+    private final boolean failFast;
+
+    private MapWorker(Builder<E, R> builder) {
+        this.elementWorker = builder.elementWorker;
+        this.source = builder.source;
+        this.parallelism = builder.parallelism;
+        this.elementTimeoutNanos = builder.elementTimeoutNanos;
+        this.executorService = builder.executorService;
+        this.failFast = builder.failFast;
+    }
+
+    public static <E, R> Builder<E, R> builder(IWorker<? super E, ? extends R> elementWorker) {
+        return new Builder<>(elementWorker);
+    }
+
+    @Override
+    public List<R> action(Collection<? extends E> param, Map<String, WorkerWrapper> allWrappers) {
+        Collection<? extends E> items = source == null ? param : source.getWorkResult().getResult();
+        if (items == null || items.isEmpty()) {
+            return new ArrayList<>(0);
+        }
+        List<E> elements = new ArrayList<>(items);
+        int size = elements.size();
+        // only this thread writes results, so a late result of a cancelled element cannot overwrite its default
+        List<R> results = new ArrayList<>(Collections.nCopies(size, elementWorker.defaultValue()));
+        CancellationToken token = CancellationToken.current();
+        CompletionService<Done<R>> completionService = new ExecutorCompletionService<>(executorService);
+        Future<?>[] futures = new Future<?>[size];
+        long[] deadlines = new long[size];
+        int submitted = 0;
+        int inFlight = 0;
+        // every element has the same timeout, so the oldest in-flight element expires first
+        int oldest = 0;
+        try {
+            while (submitted < size || inFlight > 0) {
+                while (submitted < size && inFlight < parallelism) {
+                    int index = submitted++;
+                    E element = elements.get(index);
+                    deadlines[index] = System.nanoTime() + elementTimeoutNanos;
+                    futures[index] = completionService.submit(() -> runElement(index, element, allWrappers));
+                    inFlight++;
+                }
+                token.throwIfCancelled();
+                while (futures[oldest] == null) {
+                    oldest++;
+                }
+                long wait = Math.min(deadlines[oldest] - System.nanoTime(), token.remaining(TimeUnit.NANOSECONDS));
+                Future<Done<R>> future = completionService.poll(Math.max(wait, 0), TimeUnit.NANOSECONDS);
+                if (future != null) {
+                    if (future.isCancelled()) {
+                        // an element cancelled on timeout, already accounted for
+                        continue;
+                    }
+                    Done<R> done = future.get();
+                    if (futures[done.index] == null) {
+                        // already accounted for
+                        continue;
+                    }
+                    futures[done.index] = null;
+                    inFlight--;
+                    if (done.failure != null) {
+                        throw new CompletionException(done.failure);
+                    }
+                    results.set(done.index, done.value);
+                    continue;
+                }
+                // cancel every element past its deadline
+                long now = System.nanoTime();
+                for (int i = oldest; i < submitted && now - deadlines[i] >= 0; i++) {
+                    // an element that completed just now is not cancelled, its result is polled next
+                    if (futures[i] != null && futures[i].cancel(true)) {
+                        futures[i] = null;
+                        inFlight--;
+                        if (failFast) {
+                            throw new CompletionException(new TimeoutException("element " + i + " timed out"));
+                        }
+                    }
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("map worker interrupted");
+        } catch (ExecutionException e) {
+            // runElement never throws
+            throw new CompletionException(e.getCause());
+        } finally {
+            for (int i = oldest; i < submitted; i++) {
+                if (futures[i] != null) {
+                    futures[i].cancel(true);
+                }
+            }
+        }
+    }
+
+    private Done<R> runElement(int index, E element, Map<String, WorkerWrapper> allWrappers) {
+        Done<R> done = new Done<>(index);
+        try {
+            done.value = elementWorker.action(element, allWrappers);
+        } catch (Exception e) {
+            if (failFast) {
+                done.failure = e;
+            } else {
+                done.value = elementWorker.defaultValue();
+            }
+        }
+        return done;
+    }
+
+    /**
+     * outcome of one element
+     */
+    private static final class Done<R> {
+
+        private final int index;
+
+        private R value;
+
+        private Exception failure;
+
+        private Done(int index) {
+            this.index = index;
+        }
+    }
+
+    public static class Builder<E, R> {
+
+        private final IWorker<? super E, ? extends R> elementWorker;
+
+        private WorkerWrapper<?, ? extends Collection<? extends E>> source;
+
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        private long elementTimeoutNanos = Long.MAX_VALUE >> 2;
+
+        private ExecutorService executorService;
+
+        private boolean failFast;
+
+        private Builder(IWorker<? super E, ? extends R> elementWorker) {
+            if (elementWorker == null) {
+                throw new NullPointerException("element worker cannot be null");
+            }
+            this.elementWorker = elementWorker;
+        }
+
+        /**
+         * take the elements from the result of this wrapper instead of the node's param
+         */
+        public Builder<E, R> source(WorkerWrapper<?, ? extends Collection<? extends E>> source) {
+            this.source = source;
+            return this;
+        }
+
+        /**
+         * maximum number of elements running at the same time
+         */
+        public Builder<E, R> parallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("parallelism must be positive");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public Builder<E, R> elementTimeout(long timeout, TimeUnit unit) {
+            this.elementTimeoutNanos = Math.min(unit.toNanos(timeout), Long.MAX_VALUE >> 2);
+            return this;
+        }
+
+        /**
+         * executor for the elements, defaults to the framework's common pool
+         */
+        public Builder<E, R> executor(ExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        /**
+         * fail the whole node on the first failed or timed-out element
+         */
+        public Builder<E, R> failFast(boolean failFast) {
+            this.failFast = failFast;
+            return this;
+        }
+
+        public MapWorker<E, R> build() {
+            if (executorService == null) {
+                executorService = Async.getCommonPool();
+            }
+            return new MapWorker<>(this);
+        }
+    }
+}
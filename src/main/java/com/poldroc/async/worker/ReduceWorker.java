@@ -0,0 +1,48 @@
+package com.poldroc.async.worker;
+
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.Map;
+
+/**
+ * a fan-in worker that folds each upstream result into an accumulator the moment the upstream finishes
+ * <p>
+ * instead of reading every upstream in {@link #action} after the last one arrived, the engine calls
+ * {@link #accumulate} once per upstream and execution, on the thread that finished the upstream, serialized by
+ * the wrapper. the merge work happens while slower upstreams are still running, so only the last fold and
+ * {@link #action} remain on the critical path. the param given to {@link #action} is the accumulator; the
+ * wrapper's own param is ignored. upstreams arriving after the node started are not folded
+ *
+ * @param <A> accumulator type
+ * @param <V> result type
+ */
+public interface ReduceWorker<A, V> extends IWorker<A, V> {
+
+    /**
+     * a fresh accumulator, called at the start of every execution
+     */
+    A initial();
+
+    /**
+     * fold one finished upstream, whatever its result state
+     *
+     * @return the new accumulator, may be the same mutated instance
+     */
+    A accumulate(A accumulator, WorkerWrapper<?, ?> upstream);
+
+    /**
+     * turn the accumulator into the node's result, called once every required upstream arrived
+     */
+    @Override
+    V action(A accumulator, Map<String, WorkerWrapper> allWrappers);
+
+    /**
+     * drop an upstream's result value once folded and no other node still reads it, so large intermediate
+     * results can be collected before the graph finishes. upstreams marked {@code output()} keep their result,
+     * and an upstream this node also {@code reads()} is held until this node finishes. off by default because
+     * callers that read {@code getWorkResult()} of such an upstream after the run would see null
+     */
+    default boolean releaseUpstreamResults() {
+        return false;
+    }
+}
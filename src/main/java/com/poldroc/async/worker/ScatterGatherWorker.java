@@ -0,0 +1,224 @@
+package com.poldroc.async.worker;
+
+import com.poldroc.async.wrapper.CancellationToken;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * a split/compute/merge worker for CPU-bound work over a large list
+ * <p>
+ * the input list is split into chunks that run in parallel on a fork-join pool, separate from the executor
+ * the graph runs on, so CPU work neither starves IO workers nor gets queued behind them. each chunk is turned
+ * into a partial result by {@code compute} and partial results are combined pairwise by {@code merge}, which
+ * must be associative.
+ * <p>
+ * the chunk size is tuned from the measured cost per element: every run records how long its chunks took and
+ * the next run sizes chunks to roughly {@code targetChunkTime}, large enough to amortize the fork-join overhead
+ * and small enough to keep all cores busy. inputs smaller than one chunk are computed on the calling thread
+ *
+ * @param <E> element type
+ * @param <P> partial and final result type
+ */
+public class ScatterGatherWorker<E, P> implements IWorker<List<? extends E>, P> {
+
+    private static final ForkJoinPool DEFAULT_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("roc-async-compute-" + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+    }, null, false);
+
+    /**
+     * cost estimates are kept in 1/16 ns per element
+     */
+    private static final int COST_SCALE = 16;
+
+    private final Function<List<? extends E>, P> compute;
+
+    private final BinaryOperator<P> merge;
+
+    private final ForkJoinPool pool;
+
+    private final long targetChunkNanos;
+
+    private final int minChunkSize;
+
+    /**
+     * moving average of the cost per element, 0 until the first measured run
+     */
+    private final AtomicLong scaledNanosPerElement = new AtomicLong();
+
+    private ScatterGatherWorker(Builder<E, P> builder) {
+        this.compute = builder.compute;
+        this.merge = builder.merge;
+        this.pool = builder.pool == null ? DEFAULT_POOL : builder.pool;
+        this.targetChunkNanos = builder.targetChunkNanos;
+        this.minChunkSize = builder.minChunkSize;
+    }
+
+    /**
+     * @param compute turns one chunk into a partial result
+     * @param merge   combines two partial results, must be associative
+     */
+    public static <E, P> Builder<E, P> builder(Function<List<? extends E>, P> compute, BinaryOperator<P> merge) {
+        return new Builder<>(compute, merge);
+    }
+
+    @Override
+    public P action(List<? extends E> param, Map<String, WorkerWrapper> allWrappers) {
+        List<? extends E> input = param == null ? Collections.emptyList() : param;
+        int chunkSize = chunkSize(input.size());
+        if (input.size() <= chunkSize) {
+            return compute.apply(input);
+        }
+        Chunk task = new Chunk(input, 0, input.size(), chunkSize, CancellationToken.current(), new LongAdder());
+        P result = pool.invoke(task);
+        recordCost(task.elapsed.sum(), input.size());
+        return result;
+    }
+
+    /**
+     * current chunk size estimate for an input of the given size
+     */
+    public int chunkSize(int size) {
+        long scaled = scaledNanosPerElement.get();
+        int parallelism = pool.getParallelism();
+        // upper bound: at least a few chunks per worker so stealing can balance uneven chunks
+        int max = Math.max(minChunkSize, size / (parallelism * 4));
+        if (scaled == 0) {
+            return max;
+        }
+        long chunk = targetChunkNanos * COST_SCALE / scaled;
+        return (int) Math.max(minChunkSize, Math.min(chunk, max));
+    }
+
+    /**
+     * @return measured cost per element in nanoseconds, 0 before the first parallel run
+     */
+    public double getNanosPerElement() {
+        return scaledNanosPerElement.get() / (double) COST_SCALE;
+    }
+
+    private void recordCost(long nanos, int elements) {
+        long sample = Math.max(1, nanos * COST_SCALE / elements);
+        long current;
+        long next;
+        do {
+            current = scaledNanosPerElement.get();
+            // exponentially weighted, alpha = 1/4
+            next = current == 0 ? sample : current + (sample - current) / 4;
+        } while (!scaledNanosPerElement.compareAndSet(current, next));
+    }
+
+    private final class Chunk extends RecursiveTask<P> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<? extends E> input;
+
+        private final int from;
+
+        private final int to;
+
+        private final int chunkSize;
+
+        private final CancellationToken token;
+
+        /**
+         * total time spent in compute, shared by all chunks of one run
+         */
+        private final LongAdder elapsed;
+
+        private Chunk(List<? extends E> input, int from, int to, int chunkSize, CancellationToken token, LongAdder elapsed) {
+            this.input = input;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.token = token;
+            this.elapsed = elapsed;
+        }
+
+        @Override
+        protected P compute() {
+            if (token.isCancelled()) {
+                throw new CancellationException("scatter-gather cancelled");
+            }
+            if (to - from <= chunkSize) {
+                long begin = System.nanoTime();
+                P partial = ScatterGatherWorker.this.compute.apply(input.subList(from, to));
+                elapsed.add(System.nanoTime() - begin);
+                return partial;
+            }
+            int middle = (from + to) >>> 1;
+            Chunk left = new Chunk(input, from, middle, chunkSize, token, elapsed);
+            Chunk right = new Chunk(input, middle, to, chunkSize, token, elapsed);
+            left.fork();
+            P rightResult = right.compute();
+            return merge.apply(left.join(), rightResult);
+        }
+    }
+
+    public static class Builder<E, P> {
+
+        private final Function<List<? extends E>, P> compute;
+
+        private final BinaryOperator<P> merge;
+
+        private ForkJoinPool pool;
+
+        private long targetChunkNanos = TimeUnit.MICROSECONDS.toNanos(200);
+
+        private int minChunkSize = 64;
+
+        private Builder(Function<List<? extends E>, P> compute, BinaryOperator<P> merge) {
+            if (compute == null || merge == null) {
+                throw new NullPointerException("compute and merge cannot be null");
+            }
+            this.compute = compute;
+            this.merge = merge;
+        }
+
+        /**
+         * fork-join pool for the chunks, defaults to a shared daemon pool sized to the number of cores
+         */
+        public Builder<E, P> pool(ForkJoinPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * how long one chunk should take once the cost per element is known, 200us by default
+         */
+        public Builder<E, P> targetChunkTime(long time, TimeUnit unit) {
+            this.targetChunkNanos = Math.max(1, unit.toNanos(time));
+            return this;
+        }
+
+        /**
+         * lower bound for the chunk size, 64 by default
+         */
+        public Builder<E, P> minChunkSize(int minChunkSize) {
+            if (minChunkSize < 1) {
+                throw new IllegalArgumentException("minChunkSize must be positive");
+            }
+            this.minChunkSize = minChunkSize;
+            return this;
+        }
+
+        public ScatterGatherWorker<E, P> build() {
+            return new ScatterGatherWorker<>(this);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.poldroc.async.worker;
+
+/**
+ * what a worker spends its time on, decides which pool of a
+ * {@link com.poldroc.async.executor.WorkloadRoutingExecutor} runs it
+ */
+public enum Workload {
+    /**
+     * measured at runtime from the CPU time and wall time of its executions
+     */
+    AUTO,
+    /**
+     * computes without waiting, runs on the pool sized to the number of cores
+     */
+    CPU,
+    /**
+     * waits on IO, locks or remote calls, runs on the elastic pool
+     */
+    BLOCKING
+}
@@ -0,0 +1,213 @@
+package com.poldroc.async.wrapper;
+
+import com.poldroc.async.timer.DeadlineClock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * worker执行期间的取消信号和截止时间，在 {@link com.poldroc.async.worker.IWorker#action} 里通过 {@link #current()} 获取
+ * <p>
+ * 取消是协作式的：引擎不会中断线程，worker在循环里检查 {@link #isCancelled()}，
+ * 或者用 {@link #onCancel(Runnable)} 注册回调去中止正在进行的rpc等调用。以下情况视为取消：
+ * <ul>
+ *     <li>总超时，beginWork调用了stopNow</li>
+ *     <li>wrapper被单独停止（比如竞争失败的上游）</li>
+ *     <li>这次执行剩余的时间已经用完</li>
+ * </ul>
+ * token在第一次调用current()时才创建，不使用的worker没有额外开销
+ */
+public final class CancellationToken {
+
+    /**
+     * 不在worker里调用current()时返回，永远不会被取消
+     */
+    public static final CancellationToken NONE = new CancellationToken(null, 0, Long.MAX_VALUE, null);
+
+    private static final ThreadLocal<Frame> FRAME = new ThreadLocal<>();
+
+    private final WorkerWrapper<?, ?> wrapper;
+
+    private final long executionId;
+
+    /**
+     * 截止时间，DeadlineClock的纳秒
+     */
+    private final long deadline;
+
+    private final DeadlineClock clock;
+
+    private volatile boolean cancelled;
+
+    /**
+     * 还没执行的取消回调，取消后置为null
+     */
+    private List<Runnable> hooks;
+
+    private CancellationToken(WorkerWrapper<?, ?> wrapper, long executionId, long deadline, DeadlineClock clock) {
+        this.wrapper = wrapper;
+        this.executionId = executionId;
+        this.deadline = deadline;
+        this.clock = clock;
+    }
+
+    /**
+     * 当前线程正在执行的worker的token，不在worker里时返回 {@link #NONE}
+     */
+    public static CancellationToken current() {
+        Frame frame = FRAME.get();
+        if (frame == null || frame.wrapper == null) {
+            return NONE;
+        }
+        CancellationToken token = frame.token;
+        if (token == null) {
+            token = new CancellationToken(frame.wrapper, frame.executionId, frame.deadline, frame.clock);
+            frame.token = token;
+            frame.wrapper.setCancellationToken(token);
+            // 创建之前wrapper可能已经被停止了，stopNow那时还看不到这个token
+            if (!frame.wrapper.isWorking(frame.executionId)) {
+                token.cancel();
+            }
+        }
+        return token;
+    }
+
+    /**
+     * 是否应该停止：已经被取消，或剩余时间已经用完
+     */
+    public boolean isCancelled() {
+        if (this == NONE) {
+            return false;
+        }
+        return cancelled || !wrapper.isWorking(executionId) || clock.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * 已经取消时抛出 {@link CancellationException}，worker结果记为EXCEPTION
+     */
+    public void throwIfCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException("worker " + wrapper.getId() + " is cancelled");
+        }
+    }
+
+    /**
+     * @return 剩余时间，已经超时返回0，不在worker里返回Long.MAX_VALUE
+     */
+    public long remaining(TimeUnit unit) {
+        if (this == NONE) {
+            return Long.MAX_VALUE;
+        }
+        long left = deadline - clock.nanoTime();
+        return left <= 0 ? 0 : unit.convert(left, TimeUnit.NANOSECONDS);
+    }
+
+    public long remainingMillis() {
+        return remaining(TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 注册取消时的回调，在调用stopNow的线程里执行；已经被取消时立即在当前线程执行。
+     * 剩余时间自然耗尽不会主动触发回调，总超时时beginWork会调用stopNow触发
+     */
+    public void onCancel(Runnable hook) {
+        if (this == NONE) {
+            return;
+        }
+        synchronized (this) {
+            if (!cancelled) {
+                if (hooks == null) {
+                    hooks = new ArrayList<>(2);
+                }
+                hooks.add(hook);
+                return;
+            }
+        }
+        runHook(hook);
+    }
+
+    /**
+     * 取消并执行所有回调，重复调用无效
+     */
+    void cancel() {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            toRun = hooks;
+            hooks = null;
+        }
+        if (toRun != null) {
+            for (Runnable hook : toRun) {
+                runHook(hook);
+            }
+        }
+    }
+
+    long getExecutionId() {
+        return executionId;
+    }
+
+    private static void runHook(Runnable hook) {
+        try {
+            hook.run();
+        } catch (RuntimeException ignored) {
+            // 一个回调失败不能影响其他回调和停止流程
+        }
+    }
+
+    /**
+     * 进入worker的action
+     *
+     * @return 需要传给 {@link #exit(Frame)}
+     */
+    static Frame enter(WorkerWrapper<?, ?> wrapper, long executionId, long deadline, DeadlineClock clock) {
+        Frame frame = FRAME.get();
+        if (frame == null) {
+            frame = new Frame();
+            FRAME.set(frame);
+        } else if (frame.wrapper != null) {
+            // action里又嵌套调用了beginWork，并且在当前线程执行了worker
+            Frame outer = frame;
+            frame = new Frame();
+            frame.outer = outer;
+            FRAME.set(frame);
+        }
+        frame.wrapper = wrapper;
+        frame.executionId = executionId;
+        frame.deadline = deadline;
+        frame.clock = clock;
+        return frame;
+    }
+
+    static void exit(Frame frame) {
+        frame.wrapper = null;
+        frame.clock = null;
+        frame.token = null;
+        if (frame.outer != null) {
+            FRAME.set(frame.outer);
+        }
+    }
+
+    /**
+     * 线程当前正在执行的worker，每个线程复用一个
+     */
+    static final class Frame {
+
+        private WorkerWrapper<?, ?> wrapper;
+
+        private long executionId;
+
+        private long deadline;
+
+        private DeadlineClock clock;
+
+        private CancellationToken token;
+
+        private Frame outer;
+    }
+}
@@ -0,0 +1,456 @@
+package com.poldroc.async.wrapper;
+
+import com.poldroc.async.executor.ExecutionContext;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 从一组起始wrapper编译出来的执行图
+ * <p>
+ * 编译时沿nextWrappers找出所有可达的wrapper，之后同一个模板重复执行时直接复用，
+ * 不需要每次都递归遍历、也不需要在超时时重新收集所有执行单元
+ */
+public class WorkGraph {
+
+    private final WorkerWrapper<?, ?>[] roots;
+
+    /**
+     * 所有可达的wrapper，按发现顺序排列
+     */
+    private final WorkerWrapper<?, ?>[] nodes;
+
+    /**
+     * 拓扑序，计算关键路径用；有环时环上的wrapper不在其中
+     */
+    private final WorkerWrapper<?, ?>[] topologicalOrder;
+
+    /**
+     * 和nodes一一对应：读这个wrapper结果的wrapper数
+     */
+    private final int[] consumerCounts;
+
+    /**
+     * 和nodes一一对应：这个wrapper会读哪些wrapper的结果
+     */
+    private final WorkerWrapper<?, ?>[][] producers;
+
+    /**
+     * 增量执行用：topologicalOrder里每个wrapper在nodes里的下标，以及它的producers在nodes里的下标
+     */
+    private final int[] topologicalIndexes;
+
+    private final int[][] producerIndexes;
+
+    /**
+     * 增量执行时每个wrapper是否需要重新计算，复用同一个数组
+     */
+    private final boolean[] changed;
+
+    /**
+     * 上一次restrictTo的输出和算出来的结果，同一组输出重复执行时复用
+     */
+    private WorkerWrapper<?, ?>[] lastOutputs;
+
+    private boolean[] lastNeeded;
+
+    private WorkerWrapper<?, ?>[] lastNeededRoots;
+
+    /**
+     * 按关键路径优先调度时的执行次数，每PRIORITY_INTERVAL次按最新学到的耗时重新计算一次优先级
+     */
+    private int prioritizedExecutions;
+
+    /**
+     * 编译时所有wrapper的下游边数之和，用来发现编译后拓扑又被修改的情况
+     */
+    private final int edgeCount;
+
+    /**
+     * 存放所有的wrapper，key：wrapper的唯一id，value是该wrapper，可以从value中获取wrapper的result
+     */
+    private final Map<String, WorkerWrapper> allWrappers = new ConcurrentHashMap<>();
+
+    /**
+     * 只有trace等需要时才计算
+     */
+    private volatile String shapeKey;
+
+    /**
+     * 还没有学到耗时的worker按1us估计
+     */
+    private static final long DEFAULT_COST = 1000;
+
+    private static final int PRIORITY_INTERVAL = 16;
+
+    private WorkGraph(WorkerWrapper<?, ?>[] roots, WorkerWrapper<?, ?>[] nodes, int edgeCount) {
+        this.roots = roots;
+        this.nodes = nodes;
+        this.edgeCount = edgeCount;
+        this.topologicalOrder = topologicalOrder(nodes);
+        this.consumerCounts = new int[nodes.length];
+        this.producers = new WorkerWrapper<?, ?>[nodes.length][];
+        this.topologicalIndexes = new int[topologicalOrder.length];
+        this.producerIndexes = new int[nodes.length][];
+        this.changed = new boolean[nodes.length];
+        computeConsumers();
+    }
+
+    /**
+     * 编译执行图
+     */
+    public static WorkGraph compile(List<WorkerWrapper> workerWrappers) {
+        WorkerWrapper<?, ?>[] roots = workerWrappers.toArray(new WorkerWrapper<?, ?>[0]);
+        // wrapper重写了equals/hashCode，这里只能按引用去重
+        Set<WorkerWrapper<?, ?>> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<WorkerWrapper<?, ?>> nodes = new ArrayList<>();
+        Deque<WorkerWrapper<?, ?>> stack = new ArrayDeque<>();
+        for (int i = roots.length - 1; i >= 0; i--) {
+            stack.push(roots[i]);
+        }
+        int edgeCount = 0;
+        while (!stack.isEmpty()) {
+            WorkerWrapper<?, ?> wrapper = stack.pop();
+            if (!visited.add(wrapper)) {
+                continue;
+            }
+            nodes.add(wrapper);
+            List<WorkerWrapper<?, ?>> nextWrappers = wrapper.getNextWrappers();
+            if (nextWrappers == null) {
+                continue;
+            }
+            edgeCount += nextWrappers.size();
+            for (int i = nextWrappers.size() - 1; i >= 0; i--) {
+                stack.push(nextWrappers.get(i));
+            }
+        }
+        WorkGraph graph = new WorkGraph(roots, nodes.toArray(new WorkerWrapper<?, ?>[0]), edgeCount);
+        roots[0].setCompiledGraph(graph);
+        return graph;
+    }
+
+    /**
+     * @return 之前从同一组起始wrapper编译的执行图，没有时返回null
+     */
+    public static WorkGraph cachedFor(List<WorkerWrapper> workerWrappers) {
+        WorkGraph graph = workerWrappers.get(0).getCompiledGraph();
+        return graph != null && graph.isCompiledFrom(workerWrappers) ? graph : null;
+    }
+
+    public Map<String, WorkerWrapper> getAllWrappers() {
+        return allWrappers;
+    }
+
+    /**
+     * 是否是由同一组起始wrapper编译出来的
+     */
+    public boolean isCompiledFrom(List<WorkerWrapper> workerWrappers) {
+        if (workerWrappers.size() != roots.length) {
+            return false;
+        }
+        for (int i = 0; i < roots.length; i++) {
+            if (workerWrappers.get(i) != roots[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 把所有wrapper重置为初始状态，准备下一次执行
+     *
+     * @param context 下一次执行的上下文
+     * @return 编译后拓扑被修改过时返回false，此时需要重新编译
+     */
+    public boolean reset(ExecutionContext context) {
+        int edges = 0;
+        for (WorkerWrapper<?, ?> node : nodes) {
+            List<WorkerWrapper<?, ?>> nextWrappers = node.getNextWrappers();
+            edges += nextWrappers == null ? 0 : nextWrappers.size();
+        }
+        if (edges != edgeCount) {
+            return false;
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i].setConsumers(consumerCounts[i], producers[i]);
+            nodes[i].reset(context);
+        }
+        if (context.isIncremental()) {
+            markUnchanged();
+        }
+        if (context.isPrioritized() && prioritizedExecutions++ % PRIORITY_INTERVAL == 0) {
+            updatePriorities();
+        }
+        return true;
+    }
+
+    /**
+     * 这次执行只计算outputs：从outputs沿上游和reads反向找出它们传递依赖的wrapper，其余的在调度之前标记为跳过。
+     * 需要在reset之后、提交起始wrapper之前调用
+     *
+     * @return 需要执行的起始wrapper
+     */
+    public WorkerWrapper<?, ?>[] restrictTo(List<WorkerWrapper> outputs) {
+        if (!sameOutputs(outputs)) {
+            lastNeeded = neededFor(outputs);
+            lastOutputs = outputs.toArray(new WorkerWrapper<?, ?>[0]);
+            List<WorkerWrapper<?, ?>> neededRoots = new ArrayList<>(roots.length);
+            for (WorkerWrapper<?, ?> root : roots) {
+                for (int i = 0; i < nodes.length; i++) {
+                    if (nodes[i] == root && lastNeeded[i]) {
+                        neededRoots.add(root);
+                        break;
+                    }
+                }
+            }
+            lastNeededRoots = neededRoots.toArray(new WorkerWrapper<?, ?>[0]);
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            if (!lastNeeded[i]) {
+                nodes[i].exclude();
+            }
+        }
+        return lastNeededRoots;
+    }
+
+    private boolean sameOutputs(List<WorkerWrapper> outputs) {
+        if (lastOutputs == null || lastOutputs.length != outputs.size()) {
+            return false;
+        }
+        for (int i = 0; i < lastOutputs.length; i++) {
+            if (lastOutputs[i] != outputs.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean[] neededFor(List<WorkerWrapper> outputs) {
+        Map<WorkerWrapper<?, ?>, Integer> index = new IdentityHashMap<>();
+        for (int i = 0; i < nodes.length; i++) {
+            index.put(nodes[i], i);
+        }
+        boolean[] needed = new boolean[nodes.length];
+        Deque<WorkerWrapper<?, ?>> stack = new ArrayDeque<>();
+        for (WorkerWrapper<?, ?> output : outputs) {
+            if (!index.containsKey(output)) {
+                throw new IllegalArgumentException("output " + output.getId() + " is not reachable from the roots");
+            }
+            stack.push(output);
+        }
+        while (!stack.isEmpty()) {
+            int i = index.get(stack.pop());
+            if (needed[i]) {
+                continue;
+            }
+            needed[i] = true;
+            // producers就是上游加reads，只包含图里的
+            if (producers[i] != null) {
+                for (WorkerWrapper<?, ?> producer : producers[i]) {
+                    stack.push(producer);
+                }
+            }
+        }
+        return needed;
+    }
+
+    /**
+     * 按拓扑和学到的worker耗时，计算每个wrapper到图结束的最长路径，以及每个wrapper的next按最长路径从大到小的顺序。
+     * 线程池饱和时据此让关键路径上的wrapper先执行
+     */
+    public void updatePriorities() {
+        for (int i = topologicalOrder.length - 1; i >= 0; i--) {
+            WorkerWrapper<?, ?> node = topologicalOrder[i];
+            long cost = node.getCostNanos();
+            long longestNext = 0;
+            List<WorkerWrapper<?, ?>> nextWrappers = node.getNextWrappers();
+            if (nextWrappers != null) {
+                for (WorkerWrapper<?, ?> next : nextWrappers) {
+                    longestNext = Math.max(longestNext, next.getRemainingPathNanos());
+                }
+            }
+            node.setRemainingPathNanos((cost == 0 ? DEFAULT_COST : cost) + longestNext);
+        }
+        for (WorkerWrapper<?, ?> node : nodes) {
+            List<WorkerWrapper<?, ?>> nextWrappers = node.getNextWrappers();
+            if (nextWrappers == null || nextWrappers.size() < 2) {
+                continue;
+            }
+            int[] order = node.getNextOrder();
+            if (order == null || order.length != nextWrappers.size()) {
+                order = new int[nextWrappers.size()];
+            }
+            // 插入排序，next一般很少
+            for (int i = 0; i < order.length; i++) {
+                long path = nextWrappers.get(i).getRemainingPathNanos();
+                int j = i - 1;
+                while (j >= 0 && nextWrappers.get(order[j]).getRemainingPathNanos() < path) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = i;
+            }
+            node.setNextOrder(order);
+        }
+    }
+
+    /**
+     * 结果的活跃区间：每个wrapper的结果会被哪些wrapper读（下游和用reads声明的），
+     * 这些wrapper都结束后结果就不会再被读了
+     */
+    private void computeConsumers() {
+        Map<WorkerWrapper<?, ?>, Integer> index = new IdentityHashMap<>();
+        for (int i = 0; i < nodes.length; i++) {
+            index.put(nodes[i], i);
+        }
+        Set<WorkerWrapper<?, ?>> sources = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < nodes.length; i++) {
+            WorkerWrapper<?, ?> node = nodes[i];
+            sources.clear();
+            List<DependWrapper> dependWrappers = node.getDependWrappers();
+            if (dependWrappers != null) {
+                for (DependWrapper dependWrapper : dependWrappers) {
+                    sources.add(dependWrapper.getDependWrapper());
+                }
+            }
+            List<WorkerWrapper<?, ?>> reads = node.getReads();
+            if (reads != null) {
+                sources.addAll(reads);
+            }
+            // 不在图里的不会执行，也就没有结果
+            sources.removeIf(source -> source == node || !index.containsKey(source));
+            if (sources.isEmpty()) {
+                continue;
+            }
+            producers[i] = sources.toArray(new WorkerWrapper<?, ?>[0]);
+            producerIndexes[i] = new int[producers[i].length];
+            for (int j = 0; j < producers[i].length; j++) {
+                int source = index.get(producers[i][j]);
+                producerIndexes[i][j] = source;
+                consumerCounts[source]++;
+            }
+        }
+        for (int i = 0; i < topologicalOrder.length; i++) {
+            topologicalIndexes[i] = index.get(topologicalOrder[i]);
+        }
+    }
+
+    /**
+     * 增量执行：按拓扑序找出param变化、被标记或没有上一次结果的wrapper，以及读它们结果的所有下游，
+     * 其余wrapper这次直接复用上一次的结果。环上的wrapper不在拓扑序里，总是重新计算
+     */
+    private void markUnchanged() {
+        Arrays.fill(changed, true);
+        for (int i : topologicalIndexes) {
+            boolean dirty = nodes[i].changedSinceLastRun();
+            int[] sources = producerIndexes[i];
+            if (!dirty && sources != null) {
+                for (int source : sources) {
+                    if (changed[source]) {
+                        dirty = true;
+                        break;
+                    }
+                }
+            }
+            changed[i] = dirty;
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i].setReuse(!changed[i]);
+        }
+    }
+
+    private static WorkerWrapper<?, ?>[] topologicalOrder(WorkerWrapper<?, ?>[] nodes) {
+        Map<WorkerWrapper<?, ?>, Integer> inDegree = new IdentityHashMap<>();
+        for (WorkerWrapper<?, ?> node : nodes) {
+            inDegree.putIfAbsent(node, 0);
+            List<WorkerWrapper<?, ?>> nextWrappers = node.getNextWrappers();
+            if (nextWrappers != null) {
+                for (WorkerWrapper<?, ?> next : nextWrappers) {
+                    inDegree.merge(next, 1, Integer::sum);
+                }
+            }
+        }
+        Deque<WorkerWrapper<?, ?>> ready = new ArrayDeque<>();
+        for (WorkerWrapper<?, ?> node : nodes) {
+            if (inDegree.get(node) == 0) {
+                ready.add(node);
+            }
+        }
+        List<WorkerWrapper<?, ?>> order = new ArrayList<>(nodes.length);
+        while (!ready.isEmpty()) {
+            WorkerWrapper<?, ?> node = ready.poll();
+            order.add(node);
+            List<WorkerWrapper<?, ?>> nextWrappers = node.getNextWrappers();
+            if (nextWrappers != null) {
+                for (WorkerWrapper<?, ?> next : nextWrappers) {
+                    if (inDegree.merge(next, -1, Integer::sum) == 0) {
+                        ready.add(next);
+                    }
+                }
+            }
+        }
+        return order.toArray(new WorkerWrapper<?, ?>[0]);
+    }
+
+    /**
+     * 总控制台超时，停止所有任务
+     */
+    public void stopNow() {
+        for (WorkerWrapper<?, ?> node : nodes) {
+            node.stopNow();
+        }
+    }
+
+    public WorkerWrapper<?, ?>[] getRoots() {
+        return roots;
+    }
+
+    public WorkerWrapper<?, ?>[] getNodes() {
+        return nodes;
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * 图形状的标识：worker类型和上下游关系都相同的图得到相同的key，与wrapper的id和参数无关。
+     * 每次请求都新建wrapper的图也能按形状聚合统计
+     */
+    public String getShapeKey() {
+        String key = shapeKey;
+        if (key == null) {
+            key = computeShapeKey(roots, nodes);
+            shapeKey = key;
+        }
+        return key;
+    }
+
+    private static String computeShapeKey(WorkerWrapper<?, ?>[] roots, WorkerWrapper<?, ?>[] nodes) {
+        Map<WorkerWrapper<?, ?>, Integer> index = new IdentityHashMap<>();
+        for (int i = 0; i < nodes.length; i++) {
+            index.put(nodes[i], i);
+        }
+        // FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (WorkerWrapper<?, ?> node : nodes) {
+            hash = fnv(hash, node.getWorker().getClass().getName().hashCode());
+            List<WorkerWrapper<?, ?>> nextWrappers = node.getNextWrappers();
+            if (nextWrappers != null) {
+                for (WorkerWrapper<?, ?> next : nextWrappers) {
+                    hash = fnv(hash, index.get(next));
+                }
+            }
+            hash = fnv(hash, -1);
+        }
+        return roots[0].getWorker().getClass().getSimpleName() + "/" + nodes.length + "/" + Long.toHexString(hash);
+    }
+
+    private static long fnv(long hash, int value) {
+        for (int i = 0; i < 4; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -1,17 +1,35 @@
 package com.poldroc.async.wrapper;
 
+import com.poldroc.async.buffer.PooledBuffer;
+import com.poldroc.async.callback.CallbackDispatcher;
+import com.poldroc.async.callback.CompletionListener;
 import com.poldroc.async.callback.DefaultCallback;
 import com.poldroc.async.callback.ICallback;
+import com.poldroc.async.checkpoint.CheckpointStore;
+import com.poldroc.async.exception.CancelledException;
 import com.poldroc.async.exception.SkippedException;
-import com.poldroc.async.timer.SystemClock;
+import com.poldroc.async.executor.ExecutionContext;
+import com.poldroc.async.executor.WorkloadClassifier;
+import com.poldroc.async.jfr.JfrEvents;
+import com.poldroc.async.metrics.MetricsCollector;
+import com.poldroc.async.timer.DeadlineClock;
+import com.poldroc.async.timer.MonotonicClock;
+import com.poldroc.async.trace.ExecutionTrace;
 import com.poldroc.async.worker.IWorker;
+import com.poldroc.async.worker.ReduceWorker;
 import com.poldroc.async.worker.ResultState;
 import com.poldroc.async.worker.WorkResult;
+import com.poldroc.async.worker.Workload;
 
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Predicate;
 
 import static com.poldroc.async.worker.WorkResult.defaultResult;
 
@@ -30,19 +48,194 @@ public class WorkerWrapper<T, V> {
 
     private List<WorkerWrapper<?, ?>> nextWrappers;
 
+    /**
+     * 与nextWrappers一一对应的条件，null表示无条件。自己成功后条件不满足的next连同只能由它触发的下游整体跳过
+     */
+    private List<Predicate<? super V>> nextConditions;
+
     private List<DependWrapper> dependWrappers;
 
     /**
      * 标记该事件是否已经被处理过了
      * <p>
-     * 1-finish, 2-error, 3-working
+     * 低2位是状态 1-finish, 2-error, 3-working，其余位是当前所属执行的id。
+     * 超时后还没停下来的worker只能修改自己那次执行的状态，不会影响复用这个wrapper的下一次执行
      */
-    private AtomicInteger state = new AtomicInteger(0);
+    private final AtomicLong state = new AtomicLong(INIT);
 
     private volatile WorkResult<V> workResult = defaultResult();
 
     private Map<String, WorkerWrapper> allWrappers;
 
+    /**
+     * 本次执行使用的metrics收集器
+     */
+    private MetricsCollector metrics = MetricsCollector.NOOP;
+
+    /**
+     * 本次执行被采样时的trace，否则为null
+     */
+    private ExecutionTrace trace;
+
+    /**
+     * 本次执行的完成监听
+     */
+    private CompletionListener completionListener = CompletionListener.NOOP;
+
+    /**
+     * 本次执行的callback分发器，为null时callback在当前线程同步执行
+     */
+    private CallbackDispatcher callbackDispatcher;
+
+    /**
+     * 本次执行的checkpoint和执行id，为null时不记录也不恢复
+     */
+    private CheckpointStore checkpointStore;
+
+    private String checkpointId;
+
+    /**
+     * 本次执行是否按关键路径优先调度，此时需要统计worker耗时
+     */
+    private boolean prioritized;
+
+    /**
+     * 学到的worker耗时，指数加权平均，纳秒；0表示还没有数据。用Builder.id指定了id的wrapper按worker的类和id共用一份，
+     * 每次请求重新构建的图也能用上；没有指定id的只属于这个wrapper实例
+     */
+    private AtomicLong costNanos = new AtomicLong();
+
+    /**
+     * 按worker的类学到的耗时，自己还没有数据时使用，重新构建且没有指定id的图据此估计；
+     * 同一个类的不同wrapper、同一处lambda创建的worker共用一份。都没有数据时WorkGraph按固定值估计，相当于只按拓扑的跳数排序
+     */
+    private static final ClassValue<AtomicLong> CLASS_COSTS = new ClassValue<AtomicLong>() {
+        @Override
+        protected AtomicLong computeValue(Class<?> type) {
+            return new AtomicLong();
+        }
+    };
+
+    /**
+     * 按worker的类和wrapper的id学到的耗时
+     */
+    private static final ClassValue<ConcurrentMap<String, AtomicLong>> ID_COSTS = new ClassValue<ConcurrentMap<String, AtomicLong>>() {
+        @Override
+        protected ConcurrentMap<String, AtomicLong> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    /**
+     * 从自己开始到图结束的最长路径耗时估计，由WorkGraph计算
+     */
+    private volatile long remainingPathNanos;
+
+    /**
+     * nextWrappers按remainingPathNanos从大到小的下标顺序，由WorkGraph计算
+     */
+    private volatile int[] nextOrder;
+
+    private static final AtomicIntegerFieldUpdater<WorkerWrapper> PENDING_CONSUMERS =
+            AtomicIntegerFieldUpdater.newUpdater(WorkerWrapper.class, "pendingConsumers");
+
+    private static final AtomicReferenceFieldUpdater<WorkerWrapper, PooledBuffer> HELD_BUFFER =
+            AtomicReferenceFieldUpdater.newUpdater(WorkerWrapper.class, PooledBuffer.class, "heldBuffer");
+
+    /**
+     * 结果是PooledBuffer时，由自己持有的那份引用，释放后为null
+     */
+    private volatile PooledBuffer heldBuffer;
+
+    /**
+     * 图里读自己结果的wrapper数：下游加上用reads声明的，由WorkGraph编译时计算
+     */
+    private int consumerCount;
+
+    /**
+     * 自己的结果被哪些wrapper读：上游加上reads声明的，去重后只包含图里的，由WorkGraph编译时计算
+     */
+    private WorkerWrapper<?, ?>[] producers;
+
+    /**
+     * 本次执行还没结束的consumer数加上自己，归零时结果不会再被读：释放buffer，开启dropConsumedResults时丢掉结果
+     */
+    private volatile int pendingConsumers;
+
+    /**
+     * 本次执行是否丢掉不再被读的结果
+     */
+    private boolean dropConsumedResults;
+
+    /**
+     * 图的输出，结果在beginWork返回后还要读，不会被丢掉。没有下游的wrapper总是输出
+     */
+    private boolean output;
+
+    /**
+     * 本次执行只计算指定输出时，自己不被需要，已经标记为跳过
+     */
+    private boolean excluded;
+
+    /**
+     * 增量执行：上一次成功执行时的param和结果，hasPrevious为false时没有可以复用的结果
+     */
+    private T previousParam;
+
+    private V previousResult;
+
+    private boolean hasPrevious;
+
+    /**
+     * 增量执行：被显式标记为需要重新计算
+     */
+    private volatile boolean invalidated;
+
+    /**
+     * 本次增量执行里自己和所有上游都没有变化，直接复用上一次的结果
+     */
+    private boolean reuse;
+
+    /**
+     * 本次执行的结果已经被释放或丢掉了，不能留给下一次增量执行复用
+     */
+    private boolean resultConsumed;
+
+    /**
+     * 除上游以外还会读哪些wrapper的结果
+     */
+    private List<WorkerWrapper<?, ?>> reads;
+
+    /**
+     * 作为第一个起始wrapper时编译好的执行图，和模板一起回收
+     */
+    private volatile WorkGraph compiledGraph;
+
+    /**
+     * 指定的worker类型，AUTO时按测得的CPU时间比例分类
+     */
+    private Workload workload = Workload.AUTO;
+
+    /**
+     * 本次执行的线程池按worker类型分流，需要测量worker的CPU时间
+     */
+    private boolean profileWorkload;
+
+    /**
+     * 本次执行使用的时钟
+     */
+    private DeadlineClock clock = MonotonicClock.INSTANCE;
+
+    /**
+     * 本次执行的截止时间，clock的纳秒，给worker的CancellationToken用
+     */
+    private long deadline;
+
+    /**
+     * worker在action里取过token时才有，stopNow时据此通知worker
+     */
+    private volatile CancellationToken cancellationToken;
+
     /**
      * 是否在执行自己前，去校验nextWrapper的执行结果
      * (因为可能nextWrapper有多个依赖)
@@ -51,10 +244,43 @@ public class WorkerWrapper<T, V> {
      */
     private volatile boolean needCheckNextWrapperResult = true;
 
+    /**
+     * 大于0时为K-of-N汇合：所有上游中有quorum个成功就执行自己，不再区分must，
+     * 还没结束的上游会被取消；成功已经不可能凑够quorum个时快速失败。1即为first-success
+     */
+    private int quorum;
+
+    /**
+     * worker是ReduceWorker时不为null，上游每到达一个就折叠进accumulator
+     */
+    private final ReduceWorker<Object, V> reducer;
+
+    /**
+     * 本次执行的累加值
+     */
+    private Object accumulator;
+
+    /**
+     * 本次执行中已经折叠过的上游，下标与dependWrappers一致
+     */
+    private boolean[] folded;
+
+    /**
+     * 本次执行中折叠后已经提前结束了自己那份计数的上游，下标与dependWrappers一致，结束时不再重复计数
+     */
+    private boolean[] released;
+
+    /**
+     * 有reducer折叠完自己后不再需要结果值：最后一个consumer结束时丢掉结果
+     */
+    private volatile boolean dropRequested;
+
     private static final int FINISH = 1;
     private static final int ERROR = 2;
     private static final int WORKING = 3;
     private static final int INIT = 0;
+    private static final int STATE_BITS = 2;
+    private static final long STATE_MASK = (1 << STATE_BITS) - 1;
 
     public WorkerWrapper(String id, T param, IWorker<T, V> worker, ICallback<T, V> callback) {
         if (worker == null) {
@@ -67,30 +293,36 @@ public class WorkerWrapper<T, V> {
         this.param = param;
         this.worker = worker;
         this.callback = callback;
+        this.reducer = worker instanceof ReduceWorker ? (ReduceWorker<Object, V>) worker : null;
     }
 
     /**
      * 开始工作
      *
-     * @param executorService     线程池
-     * @param fromWrapper         这次work是由哪个上游wrapper发起的
-     * @param remainTime          剩余时间
-     * @param forParamUseWrappers 用于存放所有wrapper的map
-     */
-    public void work(ExecutorService executorService, WorkerWrapper fromWrapper, long remainTime, Map<String, WorkerWrapper> forParamUseWrappers) {
-        forParamUseWrappers.put(id, this);
-        this.allWrappers = forParamUseWrappers;
-        long now = SystemClock.now();
+     * @param context     本次执行的上下文
+     * @param fromWrapper  这次work是由哪个上游wrapper发起的
+     * @param remainTime   剩余时间
+     * @param dispatchTime 这次work被提交的纳秒时间，没有metrics和trace时为0
+     */
+    public void work(ExecutionContext context, WorkerWrapper fromWrapper, long remainTime, long dispatchTime) {
+        // 上一次已经超时的执行里还没停下来的任务，不能再碰这次执行
+        if (context.getExecutionId() != getExecutionId()) {
+            return;
+        }
+        allWrappers.put(id, this);
+        long now = clock.nanoTime();
+        // 截止时间只用来求差，封顶避免remainTime很大时溢出
+        this.deadline = now + Math.min(TimeUnit.MILLISECONDS.toNanos(remainTime), Long.MAX_VALUE >> 2);
         // 总的已经超时了，就快速失败，进行下一个
         if (remainTime <= 0) {
             fastFail(INIT, null);
-            beginNext(executorService, now, remainTime);
+            beginNext(context, now, remainTime);
             return;
         }
 
         // 如果已经执行完毕了，直接进行下一个，防止其他依赖进来重复执行
         if (getState() == FINISH || getState() == ERROR) {
-            beginNext(executorService, now, remainTime);
+            beginNext(context, now, remainTime);
             return;
         }
 
@@ -98,78 +330,118 @@ public class WorkerWrapper<T, V> {
         if (needCheckNextWrapperResult) {
             // 如果自己的next链上有已经出结果或已经开始执行的任务了，自己就不用继续了
             if (!checkNextWrapperResult()) {
-                fastFail(INIT, new SkippedException());
-                beginNext(executorService, now, remainTime);
+                fastFail(INIT, SkippedException.INSTANCE);
+                beginNext(context, now, remainTime);
                 return;
             }
         }
 
+        if (reducer != null && fromWrapper != null) {
+            accumulate(fromWrapper);
+        }
+
         // 如果没有依赖，说明为第一批任务，直接执行
         if (dependWrappers == null || dependWrappers.isEmpty()) {
-            fire();
-            beginNext(executorService, now, remainTime);
+            fire(fromWrapper, dispatchTime);
+            beginNext(context, now, remainTime);
             return;
         }
         if (dependWrappers.size() == 1) {
-            doDependsOneJob(dependWrappers.get(0).getDependWrapper());
-            beginNext(executorService, now, remainTime);
+            doDependsOneJob(dependWrappers.get(0).getDependWrapper(), dispatchTime);
+            beginNext(context, now, remainTime);
         } else {
             // 有多个依赖
-            doDependsJobs(executorService, dependWrappers, fromWrapper, now, remainTime);
+            doDependsJobs(context, dependWrappers, fromWrapper, now, remainTime, dispatchTime);
         }
     }
 
-    public void work(ExecutorService executorService, long remainTime, Map<String, WorkerWrapper> forParamUseWrappers) {
-        work(executorService, null, remainTime, forParamUseWrappers);
+    /**
+     * 把刚到达的上游折叠进accumulator，与doDependsJobs用同一把锁，每个上游每次执行只折叠一次
+     */
+    private synchronized void accumulate(WorkerWrapper<?, ?> upstream) {
+        if (getState() != INIT || dependWrappers == null) {
+            return;
+        }
+        for (int i = 0; i < dependWrappers.size(); i++) {
+            if (dependWrappers.get(i).getDependWrapper() != upstream) {
+                continue;
+            }
+            if (folded[i]) {
+                return;
+            }
+            folded[i] = true;
+            accumulator = reducer.accumulate(accumulator, upstream);
+            // 用reads声明了的上游action还会读，不能提前结束计数
+            if (reducer.releaseUpstreamResults() && (reads == null || !reads.contains(upstream))) {
+                released[i] = true;
+                upstream.dropRequested = true;
+                upstream.consumerFinished(getExecutionId());
+            }
+            return;
+        }
     }
 
     /**
      * 总控制台超时，停止所有任务
      */
     public void stopNow() {
+        long executionId = getExecutionId();
         if (getState() == INIT || getState() == WORKING) {
             fastFail(getState(), null);
         }
+        cancelToken(executionId);
     }
 
+    /**
+     * 通知正在执行的worker停止，worker没有取过token时什么也不做
+     */
+    private void cancelToken(long executionId) {
+        CancellationToken token = cancellationToken;
+        if (token != null && token.getExecutionId() == executionId) {
+            token.cancel();
+        }
+    }
 
-    private void doDependsOneJob(WorkerWrapper dependWrapper) {
-        if (ResultState.TIMEOUT == dependWrapper.getWorkResult().getResultState()) {
-            workResult = defaultTimeOutResult();
-            fastFail(INIT, null);
-        } else if (ResultState.EXCEPTION == dependWrapper.getWorkResult().getResultState()) {
-            workResult = defaultExResult(dependWrapper.getWorkResult().getEx());
-            fastFail(INIT, null);
+
+    private void doDependsOneJob(WorkerWrapper dependWrapper, long dispatchTime) {
+        ResultState dependState = dependWrapper.getWorkResult().getResultState();
+        if (ResultState.TIMEOUT == dependState || ResultState.EXCEPTION == dependState) {
+            failWithUpstream(dependWrapper.getWorkResult());
         } else {
-            fire();
+            fire(dependWrapper, dispatchTime);
         }
     }
 
-    private synchronized void doDependsJobs(ExecutorService executorService, List<DependWrapper> dependWrappers, WorkerWrapper fromWrapper, long now, long remainTime) {
+    private synchronized void doDependsJobs(ExecutionContext context, List<DependWrapper> dependWrappers, WorkerWrapper fromWrapper, long now, long remainTime, long dispatchTime) {
         // 如果当前任务已经完成了，依赖的其他任务拿到锁再进来时，不需要执行下面的逻辑了
         if (getState() != INIT) {
             return;
         }
+        if (quorum > 0) {
+            doQuorumJob(context, dependWrappers, fromWrapper, now, remainTime, dispatchTime);
+            return;
+        }
         boolean nowDependIsMust = false;
-        // 必须完成的上游wrapper集合
-        Set<DependWrapper> mustWrapper = new HashSet<>();
-        for (DependWrapper dependWrapper : dependWrappers) {
+        // 是否存在必须完成的上游wrapper
+        boolean existMust = false;
+        for (int i = 0; i < dependWrappers.size(); i++) {
+            DependWrapper dependWrapper = dependWrappers.get(i);
             if (dependWrapper.isMust()) {
-                mustWrapper.add(dependWrapper);
+                existMust = true;
             }
-            if (dependWrapper.getDependWrapper().equals(fromWrapper)) {
+            if (dependWrapper.getDependWrapper() == fromWrapper) {
                 nowDependIsMust = dependWrapper.isMust();
             }
         }
 
         // 如果全部是不必须的条件，那么只要到了这里，就执行自己
-        if (mustWrapper.isEmpty()) {
+        if (!existMust) {
             if (ResultState.TIMEOUT == fromWrapper.getWorkResult().getResultState()) {
                 fastFail(INIT, null);
             } else {
-                fire();
+                fire(fromWrapper, dispatchTime);
             }
-            beginNext(executorService, now, remainTime);
+            beginNext(context, now, remainTime);
             return;
         }
 
@@ -181,7 +453,11 @@ public class WorkerWrapper<T, V> {
         // 如果fromWrapper是必须的
         boolean existNoFinish = false;
         // 先判断前面必须要执行的依赖任务的执行结果，只要有任何一个失败，就不action，快速失败，进行下一步
-        for (DependWrapper dependWrapper : mustWrapper) {
+        for (int i = 0; i < dependWrappers.size(); i++) {
+            DependWrapper dependWrapper = dependWrappers.get(i);
+            if (!dependWrapper.isMust()) {
+                continue;
+            }
             WorkerWrapper<?, ?> workerWrapper = dependWrapper.getDependWrapper();
             WorkResult<?> tempWorkResult = workerWrapper.getWorkResult();
             // 检查任务状态是否为INIT或WORKING
@@ -192,10 +468,9 @@ public class WorkerWrapper<T, V> {
             // 检查任务结果状态是否为TIMEOUT或EXCEPTION
             ResultState resultState = tempWorkResult.getResultState();
             if (resultState == ResultState.TIMEOUT || resultState == ResultState.EXCEPTION) {
-                workResult = (resultState == ResultState.TIMEOUT) ? defaultTimeOutResult() : defaultExResult(workerWrapper.getWorkResult().getEx());
                 // 上游只要有失败 本任务就不执行
-                fastFail(INIT, null);
-                beginNext(executorService, now, remainTime);
+                failWithUpstream(tempWorkResult);
+                beginNext(context, now, remainTime);
                 return;
             }
         }
@@ -204,49 +479,194 @@ public class WorkerWrapper<T, V> {
         // 1.都finish 2.有的在working （现在不需要处理）
         if (!existNoFinish) {
             // 都finish
-            fire();
-            beginNext(executorService, now, remainTime);
+            fire(fromWrapper, dispatchTime);
+            beginNext(context, now, remainTime);
+        }
+    }
+
+    /**
+     * K-of-N汇合，在doDependsJobs的锁内调用
+     */
+    private void doQuorumJob(ExecutionContext context, List<DependWrapper> dependWrappers, WorkerWrapper fromWrapper, long now, long remainTime, long dispatchTime) {
+        int success = 0;
+        int failure = 0;
+        WorkerWrapper<?, ?> lastFailure = null;
+        for (int i = 0; i < dependWrappers.size(); i++) {
+            WorkerWrapper<?, ?> workerWrapper = dependWrappers.get(i).getDependWrapper();
+            int dependState = workerWrapper.getState();
+            if (dependState == INIT || dependState == WORKING) {
+                continue;
+            }
+            if (workerWrapper.getWorkResult().getResultState() == ResultState.SUCCESS) {
+                success++;
+            } else {
+                failure++;
+                lastFailure = workerWrapper;
+            }
+        }
+        if (success >= quorum) {
+            // 先取消落选的上游，让它们尽早让出线程
+            for (int i = 0; i < dependWrappers.size(); i++) {
+                dependWrappers.get(i).getDependWrapper().cancelLoser(this);
+            }
+            fire(fromWrapper, dispatchTime);
+            beginNext(context, now, remainTime);
+            return;
+        }
+        if (failure > dependWrappers.size() - quorum) {
+            // 剩下的全部成功也凑不够了
+            failWithUpstream(lastFailure.getWorkResult());
+            beginNext(context, now, remainTime);
+        }
+    }
+
+    /**
+     * quorum已经凑够，取消还没结束的上游。只有下游仅有winner一个时才取消，否则会影响其他下游
+     */
+    private void cancelLoser(WorkerWrapper<?, ?> winner) {
+        if (nextWrappers == null || nextWrappers.size() != 1 || nextWrappers.get(0) != winner) {
+            return;
+        }
+        long executionId = getExecutionId();
+        int current = getState();
+        if (current == INIT || current == WORKING) {
+            fastFail(executionId, current, CancelledException.INSTANCE, null, null, 0, 0);
+            cancelToken(executionId);
         }
     }
 
     /**
      * 执行自己的job.具体的执行是在另一个线程里,但判断阻塞超时是在work线程
      */
-    private void fire() {
-        workResult = workerDoJob();
+    private void fire(WorkerWrapper fromWrapper, long dispatchTime) {
+        workResult = workerDoJob(getExecutionId(), fromWrapper, dispatchTime);
     }
 
     /**
      * 具体的单个worker执行任务
+     *
+     * @param fromWrapper  触发这次执行的上游wrapper，仅用于trace
+     * @param dispatchTime 触发这次执行的work被提交的时间，仅用于trace
      */
-    private WorkResult<V> workerDoJob() {
+    private WorkResult<V> workerDoJob(long executionId, WorkerWrapper fromWrapper, long dispatchTime) {
         // 避免重复执行
         if (!checkIsNullResult()) {
             return workResult;
         }
+        long begin = 0;
+        Object jfrEvent = null;
         try {
+            // 异步分发callback时先占住begin的位置，保证之后任何线程发布的result都排在begin后面
+            CallbackDispatcher dispatcher = this.callbackDispatcher;
+            long beginSequence = dispatcher == null ? -1 : dispatcher.claim();
             // 重要: 如果已经不是INIT状态，说明已经被其他线程执行或已执行完毕，直接返回
-            if (!compareAndSetState(INIT, WORKING)) {
+            if (!compareAndSetState(executionId, INIT, WORKING)) {
+                if (dispatcher != null) {
+                    dispatcher.skip(beginSequence);
+                }
                 return workResult;
             }
 
-            callback.begin();
-            V resultValue = worker.action(param, allWrappers);
+            if (dispatcher == null) {
+                callback.begin();
+            } else {
+                dispatcher.begin(beginSequence, callback);
+            }
+            MetricsCollector metrics = this.metrics;
+            ExecutionTrace trace = this.trace;
+            // 没有安装metrics和trace、也不需要学习耗时时不读时钟
+            begin = metrics == MetricsCollector.NOOP && trace == null && !prioritized ? 0 : System.nanoTime();
+            long end = 0;
+            if (JfrEvents.AVAILABLE) {
+                jfrEvent = JfrEvents.beginNode();
+            }
+            V resultValue = null;
+            T usedParam = param;
+            CheckpointStore checkpointStore = this.checkpointStore;
+            // 增量执行时没有变化的直接复用上一次的结果；同一个执行id已经记录过成功结果时直接恢复，都不再执行worker
+            boolean restored = reuse;
+            if (restored) {
+                resultValue = previousResult;
+            } else if (checkpointStore != null && checkpointStore.contains(checkpointId, id)) {
+                restored = true;
+                try {
+                    resultValue = (V) checkpointStore.restore(checkpointId, id);
+                } catch (IOException | RuntimeException e) {
+                    // 记录读不出来（比如结果类型变了）就重新执行
+                    restored = false;
+                }
+            }
+            if (!restored) {
+                metrics.onStart(this);
+                CancellationToken.Frame frame = CancellationToken.enter(this, executionId, deadline, clock);
+                boolean profile = profileWorkload;
+                int entered = profile ? WorkloadClassifier.enter() : 0;
+                long wallBegin = profile ? System.nanoTime() : 0;
+                long cpuBegin = profile ? WorkloadClassifier.currentThreadCpuTime() : 0;
+                try {
+                    resultValue = reducer == null ? worker.action(param, allWrappers) : reducer.action(accumulator, allWrappers);
+                } finally {
+                    CancellationToken.exit(frame);
+                    if (profile) {
+                        WorkloadClassifier.exit(reducer == null ? worker : reducer, entered, cpuBegin, wallBegin);
+                    }
+                    if (jfrEvent != null) {
+                        JfrEvents.endNode(jfrEvent);
+                    }
+                    if (begin != 0) {
+                        end = System.nanoTime();
+                        metrics.onExecution(this, end - begin);
+                        if (prioritized) {
+                            long sample = Math.max(1, end - begin);
+                            learnCost(costNanos, sample);
+                            learnCost(CLASS_COSTS.get(worker.getClass()), sample);
+                        }
+                    }
+                }
+            } else if (begin != 0) {
+                end = System.nanoTime();
+            }
 
-            if (!compareAndSetState(WORKING, FINISH)) {
+            if (!compareAndSetState(executionId, WORKING, FINISH)) {
+                // 超时后才算出来的buffer没有人会用了
+                if (resultValue instanceof PooledBuffer) {
+                    ((PooledBuffer) resultValue).release();
+                }
                 return workResult;
             }
 
+            if (resultValue instanceof PooledBuffer) {
+                heldBuffer = (PooledBuffer) resultValue;
+            }
+            previousParam = usedParam;
             workResult.setResultState(ResultState.SUCCESS);
             workResult.setResult(resultValue);
-            callback.result(true, param, workResult);
+            if (checkpointStore != null && !restored) {
+                try {
+                    checkpointStore.record(checkpointId, id, resultValue);
+                } catch (IOException | RuntimeException e) {
+                    // 记录失败不影响这次的结果，只是重新执行时还要再算一次
+                }
+            }
+            metrics.onResult(this, ResultState.SUCCESS, false);
+            if (trace != null) {
+                trace.record(this, fromWrapper, dispatchTime, begin, end, ResultState.SUCCESS, false);
+            }
+            result(true);
+            completionListener.onComplete(this);
+            notifyProducers(executionId);
             return workResult;
         } catch (Exception e) {
             if (!checkIsNullResult()) {
                 return workResult;
             }
-            fastFail(WORKING, e);
+            fastFail(executionId, WORKING, e, null, fromWrapper, dispatchTime, begin);
             return workResult;
+        } finally {
+            // 超时后才执行完的worker也会提交，state是当时的结果
+            if (jfrEvent != null) {
+                JfrEvents.commitNode(jfrEvent, executionId, this, workResult.getResultState());
+            }
         }
     }
 
@@ -260,60 +680,366 @@ public class WorkerWrapper<T, V> {
             return getState() == INIT;
         }
         WorkerWrapper<?, ?> nextWrapper = nextWrappers.get(0);
+        if (nextWrapper.excluded) {
+            // 本次执行不需要的next不会执行，相当于没有next
+            return getState() == INIT;
+        }
         boolean state = nextWrapper.getState() == INIT;
         // 继续校验自己的next的状态
         return state && nextWrapper.checkNextWrapperResult();
     }
 
-    private void fastFail(int expect, Exception e) {
+    private boolean fastFail(int expect, Exception e) {
+        return fastFail(getExecutionId(), expect, e, null, null, 0, 0);
+    }
+
+    /**
+     * 上游失败，自己不执行，沿用上游的超时或异常
+     */
+    private boolean failWithUpstream(WorkResult<?> upstream) {
+        return fastFail(getExecutionId(), INIT, null, upstream, null, 0, 0);
+    }
+
+    /**
+     * 结果只在状态CAS成功后才写：WorkResult在模板的多次执行之间复用，
+     * 模板重置前就进来、迟到的调用不能改掉下一次执行的结果
+     *
+     * @param upstream     导致自己失败的上游结果，为null时按e处理
+     * @param fromWrapper  触发这次执行的上游wrapper，仅用于trace
+     * @param dispatchTime 触发这次执行的work被提交的时间，仅用于trace
+     * @param startTime    worker开始执行的时间，没有执行过为0，仅用于trace
+     * @return 状态是否由自己改为了ERROR
+     */
+    private boolean fastFail(long executionId, int expect, Exception e, WorkResult<?> upstream, WorkerWrapper fromWrapper,
+                             long dispatchTime, long startTime) {
         // 试图将状态从expect改为ERROR
-        if (!compareAndSetState(expect, ERROR)) {
-            return;
+        if (!compareAndSetState(executionId, expect, ERROR)) {
+            return false;
         }
         // 未处理过结果
         if (checkIsNullResult()) {
-            if (e == null) {
+            if (upstream != null && upstream.getResultState() == ResultState.EXCEPTION) {
+                workResult = defaultExResult(upstream.getEx());
+            } else if (e == null) {
                 workResult = defaultTimeOutResult();
             } else {
                 workResult = defaultExResult(e);
             }
         }
-        callback.result(false, param, workResult);
+        if (e instanceof CancelledException) {
+            metrics.onCancelled(this);
+        } else {
+            metrics.onResult(this, workResult.getResultState(), e instanceof SkippedException);
+        }
+        // 执行过的worker由workerDoJob提交jfr事件
+        if (JfrEvents.AVAILABLE && (expect == INIT || e == null)) {
+            JfrEvents.nodeAborted(executionId, this, workResult.getResultState(), e instanceof SkippedException);
+        }
+        ExecutionTrace trace = this.trace;
+        if (trace != null) {
+            long now = System.nanoTime();
+            trace.record(this, fromWrapper, dispatchTime, startTime == 0 ? now : startTime, now,
+                    workResult.getResultState(), e instanceof SkippedException);
+        }
+        result(false);
+        completionListener.onComplete(this);
+        notifyProducers(executionId);
+        return true;
     }
 
-    private void beginNext(ExecutorService executorService, long now, long remainTime) {
+    /**
+     * 自己已经结束，不会再读上游和reads的结果了；自己的结果也已经产出，结束自己占的那一份计数
+     */
+    private void notifyProducers(long executionId) {
+        WorkerWrapper<?, ?>[] producers = this.producers;
+        if (producers != null) {
+            if (reducer != null) {
+                // 与accumulate同一把锁：状态已经不是INIT，之后不会再有上游被提前结束计数
+                synchronized (this) {
+                    for (WorkerWrapper<?, ?> producer : producers) {
+                        if (!releasedEarly(producer)) {
+                            producer.consumerFinished(executionId);
+                        }
+                    }
+                }
+            } else {
+                for (WorkerWrapper<?, ?> producer : producers) {
+                    producer.consumerFinished(executionId);
+                }
+            }
+        }
+        consumerFinished(executionId);
+    }
+
+    private boolean releasedEarly(WorkerWrapper<?, ?> producer) {
+        for (int i = 0; i < released.length; i++) {
+            if (released[i] && dependWrappers.get(i).getDependWrapper() == producer) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 本次执行不需要自己：直接标记为跳过，不执行worker、不回调，上游也不会再触发自己。
+     * 不需要的wrapper的下游一定也不需要，整个不需要的部分都不会被调度。
+     * CompletionListener仍然收到自己，保证每个wrapper每次执行都通知一次
+     */
+    void exclude() {
+        excluded = true;
+        long executionId = getExecutionId();
+        if (!compareAndSetState(executionId, INIT, ERROR)) {
+            return;
+        }
+        defaultExResult(SkippedException.INSTANCE);
+        completionListener.onComplete(this);
+        notifyProducers(executionId);
+    }
+
+    /**
+     * 一个consumer结束，超时后才结束的上一次执行不计数
+     */
+    private void consumerFinished(long executionId) {
+        if (getExecutionId() == executionId && PENDING_CONSUMERS.decrementAndGet(this) == 0) {
+            if (output || consumerCount == 0) {
+                return;
+            }
+            boolean drop = dropConsumedResults || dropRequested;
+            resultConsumed = heldBuffer != null || drop;
+            releaseResult();
+            if (drop) {
+                // 只丢掉结果值，状态和异常保留
+                workResult.setResult(null);
+            }
+        }
+    }
+
+    private void result(boolean success) {
+        CallbackDispatcher dispatcher = this.callbackDispatcher;
+        if (dispatcher == null) {
+            callback.result(success, param, workResult);
+        } else {
+            dispatcher.result(callback, success, param, workResult);
+        }
+    }
+
+    private void beginNext(ExecutionContext context, long now, long remainTime) {
         // 耗时计算
-        long costTime = SystemClock.now() - now;
+        long costTime = TimeUnit.NANOSECONDS.toMillis(context.getClock().nanoTime() - now);
         if (nextWrappers == null || nextWrappers.isEmpty()) {
             return;
         }
-        if (nextWrappers.size() == 1) {
-            nextWrappers.get(0).work(executorService, WorkerWrapper.this, remainTime - costTime, allWrappers);
+        long nextRemainTime = remainTime - costTime;
+        // 除最后一个以外的next都提交到线程池并行执行，最后一个直接在当前线程执行，当前线程不再阻塞等待
+        // 整个执行是否结束由context统一计数，在beginWork里等待。按worker类型分流时和当前线程池类型不同的next总是提交
+        int inline = -1;
+        int[] order = prioritized ? nextOrder : null;
+        if (order != null && order.length == nextWrappers.size()) {
+            // 关键路径优先：剩余路径最长的next在当前线程直接执行，其余按剩余路径从长到短提交
+            for (int i : order) {
+                if (nextWrappers.get(i).excluded) {
+                    continue;
+                }
+                if (!admit(context, i, nextRemainTime)) {
+                    continue;
+                }
+                if (inline < 0 && context.canRunInline(nextWrappers.get(i))) {
+                    inline = i;
+                } else {
+                    context.submit(this, nextWrappers.get(i), nextRemainTime);
+                }
+            }
+        } else {
+            for (int i = 0; i < nextWrappers.size(); i++) {
+                if (nextWrappers.get(i).excluded) {
+                    continue;
+                }
+                if (!admit(context, i, nextRemainTime)) {
+                    continue;
+                }
+                if (!context.canRunInline(nextWrappers.get(i))) {
+                    context.submit(this, nextWrappers.get(i), nextRemainTime);
+                    continue;
+                }
+                if (inline >= 0) {
+                    context.submit(this, nextWrappers.get(inline), nextRemainTime);
+                }
+                inline = i;
+            }
+        }
+        if (inline >= 0) {
+            nextWrappers.get(inline).work(context, WorkerWrapper.this, nextRemainTime, context.timestamp());
+        }
+    }
+
+    /**
+     * 检查到第i个next的条件边：不满足时跳过next和只能由它触发的下游；条件本身抛异常时next按这个异常失败，
+     * 它的下游照常按上游失败处理。两种情况都返回false，调用方继续处理其余的next
+     */
+    private boolean admit(ExecutionContext context, int i, long remainTime) {
+        boolean passed;
+        try {
+            passed = testCondition(i);
+        } catch (RuntimeException e) {
+            WorkerWrapper<?, ?> next = nextWrappers.get(i);
+            if (next.fastFail(INIT, e)) {
+                next.beginNext(context, context.getClock().nanoTime(), remainTime);
+            }
+            return false;
+        }
+        if (!passed) {
+            nextWrappers.get(i).prune(context, remainTime);
+        }
+        return passed;
+    }
+
+    /**
+     * 到第i个next的边是否放行，只有自己成功时才判断条件，失败照常传递给下游
+     */
+    private boolean testCondition(int i) {
+        if (nextConditions == null) {
+            return true;
+        }
+        Predicate<? super V> condition = nextConditions.get(i);
+        if (condition == null || workResult.getResultState() != ResultState.SUCCESS) {
+            return true;
+        }
+        return condition.test(workResult.getResult());
+    }
+
+    /**
+     * 条件边不满足，自己和只能由自己触发的下游一次性标记为跳过：不提交线程池，也不执行worker，
+     * 每个被跳过的wrapper只有一次失败回调。强依赖自己的下游必然会失败，一起跳过；
+     * 其他下游在当前线程用一次work通知，按原有的汇合逻辑决定是否执行；按worker类型分流时类型不同的下游提交到线程池
+     */
+    private void prune(ExecutionContext context, long remainTime) {
+        if (!fastFail(INIT, SkippedException.INSTANCE)) {
+            return;
+        }
+        if (nextWrappers == null) {
             return;
         }
-        // 并行执行
-        CompletableFuture[] futures = new CompletableFuture[nextWrappers.size()];
         for (int i = 0; i < nextWrappers.size(); i++) {
-            WorkerWrapper<?, ?> nextWrapper = nextWrappers.get(i);
-            futures[i] = CompletableFuture.runAsync(() ->
-                    nextWrapper.work(executorService, WorkerWrapper.this, remainTime - costTime, allWrappers), executorService);
+            WorkerWrapper<?, ?> next = nextWrappers.get(i);
+            if (next.mustDependOn(this)) {
+                next.prune(context, remainTime);
+            } else if (context.canRunInline(next)) {
+                next.work(context, this, remainTime, context.timestamp());
+            } else {
+                context.submit(this, next, remainTime);
+            }
         }
-        try {
-            // 等待所有的next执行完毕
-            CompletableFuture.allOf(futures).get(remainTime - costTime, java.util.concurrent.TimeUnit.MILLISECONDS);
-        } catch (Exception e) {
-            e.printStackTrace();
+    }
+
+    /**
+     * upstream失败时自己是否一定会失败
+     */
+    private boolean mustDependOn(WorkerWrapper<?, ?> upstream) {
+        if (quorum > 0) {
+            return false;
+        }
+        if (dependWrappers.size() == 1) {
+            return true;
+        }
+        for (int i = 0; i < dependWrappers.size(); i++) {
+            DependWrapper dependWrapper = dependWrappers.get(i);
+            if (dependWrapper.getDependWrapper() == upstream && dependWrapper.isMust()) {
+                return true;
+            }
         }
+        return false;
     }
 
     private int getState() {
-        return state.get();
+        return (int) (state.get() & STATE_MASK);
+    }
+
+    private long getExecutionId() {
+        return state.get() >>> STATE_BITS;
+    }
+
+    /**
+     * worker是否还在执行id为executionId的那次执行
+     */
+    boolean isWorking(long executionId) {
+        return state.get() == (executionId << STATE_BITS | WORKING);
+    }
+
+    WorkGraph getCompiledGraph() {
+        return compiledGraph;
+    }
+
+    void setCompiledGraph(WorkGraph compiledGraph) {
+        this.compiledGraph = compiledGraph;
+    }
+
+    long getCostNanos() {
+        long cost = costNanos.get();
+        return cost != 0 ? cost : CLASS_COSTS.get(worker.getClass()).get();
+    }
+
+    private static void learnCost(AtomicLong costNanos, long sample) {
+        // 并发执行时可能丢掉一个样本，不影响排序
+        long cost = costNanos.get();
+        costNanos.lazySet(cost == 0 ? sample : cost + ((sample - cost) >> 3));
+    }
+
+    /**
+     * @return 指定的worker类型，没有指定时为自动分类的结果，还没有分类时为AUTO
+     */
+    public Workload getWorkload() {
+        if (workload != Workload.AUTO) {
+            return workload;
+        }
+        return WorkloadClassifier.classify(reducer == null ? worker : reducer);
+    }
+
+    /**
+     * @return 从自己开始到图结束的最长路径耗时估计，没有开启关键路径优先调度时为0
+     */
+    public long getRemainingPathNanos() {
+        return remainingPathNanos;
+    }
+
+    void setRemainingPathNanos(long remainingPathNanos) {
+        this.remainingPathNanos = remainingPathNanos;
+    }
+
+    void setNextOrder(int[] nextOrder) {
+        this.nextOrder = nextOrder;
+    }
+
+    int[] getNextOrder() {
+        return nextOrder;
+    }
+
+    void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public IWorker<T, V> getWorker() {
+        return worker;
     }
 
     public WorkResult<V> getWorkResult() {
         return workResult;
     }
 
+    /**
+     * 结果是 {@link PooledBuffer} 时把自己持有的引用还给池子。有下游的wrapper在最后一个下游结束时自动释放，
+     * 没有下游的在下次执行前释放，调用方不再需要结果时也可以提前调用，多次调用无效
+     */
+    public void releaseResult() {
+        PooledBuffer buffer = HELD_BUFFER.getAndSet(this, null);
+        if (buffer != null) {
+            buffer.release();
+        }
+    }
+
     public List<WorkerWrapper<?, ?>> getNextWrappers() {
         return nextWrappers;
     }
@@ -322,6 +1048,94 @@ public class WorkerWrapper<T, V> {
         this.param = param;
     }
 
+    /**
+     * 重置为初始状态，以便同一个wrapper在下一次执行中复用，workResult对象本身也会被复用。
+     * 本次执行的metrics、trace等也在这里设置，没有被执行到、直接被stopNow的wrapper也用的是本次执行的
+     */
+    void reset(ExecutionContext context) {
+        state.set(context.getExecutionId() << STATE_BITS | INIT);
+        allWrappers = context.getAllWrappers();
+        metrics = context.getMetrics();
+        trace = context.getTrace();
+        clock = context.getClock();
+        completionListener = context.getCompletionListener();
+        callbackDispatcher = context.getCallbackDispatcher();
+        checkpointStore = context.getCheckpointStore();
+        checkpointId = context.getCheckpointId();
+        prioritized = context.isPrioritized();
+        profileWorkload = workload == Workload.AUTO && context.isRoutingWorkload() && WorkloadClassifier.SUPPORTED;
+        cancellationToken = null;
+        excluded = false;
+        dropRequested = false;
+        reuse = false;
+        // 增量执行时留下上一次的成功结果；buffer结果马上会被释放，不能复用
+        Object result = workResult.getResult();
+        hasPrevious = context.isIncremental() && workResult.getResultState() == ResultState.SUCCESS
+                && !resultConsumed && !(result instanceof PooledBuffer);
+        previousResult = hasPrevious ? workResult.getResult() : null;
+        resultConsumed = false;
+        if (reducer != null) {
+            int depends = dependWrappers == null ? 0 : dependWrappers.size();
+            if (folded == null || folded.length != depends) {
+                folded = new boolean[depends];
+                released = new boolean[depends];
+            } else {
+                Arrays.fill(folded, false);
+                Arrays.fill(released, false);
+            }
+            accumulator = reducer.initial();
+        }
+        releaseResult();
+        pendingConsumers = consumerCount + 1;
+        dropConsumedResults = context.isDropConsumedResults();
+        workResult.setResultState(ResultState.DEFAULT);
+        workResult.setResult(null);
+        workResult.setEx(null);
+    }
+
+    /**
+     * 标记为需要重新计算，下一次增量执行时自己和下游都会重新执行。
+     * param是同一个对象、只是内容被修改了时，equals判断不出变化，需要调用这个方法
+     */
+    public void invalidate() {
+        invalidated = true;
+    }
+
+    /**
+     * 增量执行时自己是否需要重新计算：被标记过、没有上一次的结果，或者param和上一次不相等
+     */
+    boolean changedSinceLastRun() {
+        return invalidated || !hasPrevious || !Objects.equals(param, previousParam);
+    }
+
+    /**
+     * 由WorkGraph在增量执行开始前决定自己是否直接复用上一次的结果
+     */
+    void setReuse(boolean reuse) {
+        this.reuse = reuse;
+        invalidated = false;
+    }
+
+    /**
+     * WorkGraph编译时计算出的consumer关系
+     */
+    void setConsumers(int consumerCount, WorkerWrapper<?, ?>[] producers) {
+        this.consumerCount = consumerCount;
+        this.producers = producers;
+    }
+
+    List<DependWrapper> getDependWrappers() {
+        return dependWrappers;
+    }
+
+    List<WorkerWrapper<?, ?>> getReads() {
+        return reads;
+    }
+
+    public boolean isOutput() {
+        return output;
+    }
+
     private void setNeedCheckNextWrapperResult(boolean needCheckNextWrapperResult) {
         this.needCheckNextWrapperResult = needCheckNextWrapperResult;
     }
@@ -336,31 +1150,50 @@ public class WorkerWrapper<T, V> {
         }
         // 如果依赖的是重复的同一个，就不重复添加了
         for (DependWrapper wrapper : dependWrappers) {
-            if (wrapper.equals(dependWrapper)) {
+            if (wrapper.getDependWrapper() == dependWrapper.getDependWrapper() && wrapper.isMust() == dependWrapper.isMust()) {
                 return;
             }
         }
         dependWrappers.add(dependWrapper);
     }
 
-    private void addNext(WorkerWrapper<?, ?> workerWrapper) {
+    private void addNext(WorkerWrapper<?, ?> workerWrapper, Predicate<? super V> condition) {
         if (nextWrappers == null) {
             nextWrappers = new ArrayList<>();
         }
-        // 避免添加重复
-        for (WorkerWrapper wrapper : nextWrappers) {
-            if (workerWrapper.equals(wrapper)) {
-                return;
+        // 避免添加重复，重复添加时以后给的条件为准
+        int index = -1;
+        for (int i = 0; i < nextWrappers.size(); i++) {
+            if (nextWrappers.get(i) == workerWrapper) {
+                index = i;
+                break;
             }
         }
-        nextWrappers.add(workerWrapper);
+        if (index < 0) {
+            index = nextWrappers.size();
+            nextWrappers.add(workerWrapper);
+            if (nextConditions != null) {
+                nextConditions.add(null);
+            }
+        }
+        if (condition != null) {
+            if (nextConditions == null) {
+                nextConditions = new ArrayList<>(Collections.nCopies(nextWrappers.size(), null));
+            }
+            nextConditions.set(index, condition);
+        }
     }
 
     /**
      * 如果当前wrapper的状态是expect，那么将状态更新为update，返回 true
      */
     private boolean compareAndSetState(int expect, int update) {
-        return this.state.compareAndSet(expect, update);
+        return compareAndSetState(getExecutionId(), expect, update);
+    }
+
+    private boolean compareAndSetState(long executionId, int expect, int update) {
+        long id = executionId << STATE_BITS;
+        return this.state.compareAndSet(id | expect, id | update);
     }
 
     private boolean checkIsNullResult() {
@@ -390,7 +1223,7 @@ public class WorkerWrapper<T, V> {
         }
         WorkerWrapper<?, ?> that = (WorkerWrapper<?, ?>) o;
         return needCheckNextWrapperResult == that.needCheckNextWrapperResult &&
-                state.get() == that.state.get() &&
+                getState() == that.getState() &&
                 Objects.equals(param, that.param) &&
                 Objects.equals(worker, that.worker) &&
                 Objects.equals(callback, that.callback) &&
@@ -401,7 +1234,7 @@ public class WorkerWrapper<T, V> {
 
     @Override
     public int hashCode() {
-        return Objects.hash(param, worker, callback, nextWrappers, dependWrappers, state.get(), workResult, needCheckNextWrapperResult);
+        return Objects.hash(param, worker, callback, nextWrappers, dependWrappers, getState(), workResult, needCheckNextWrapperResult);
     }
 
     public static class Builder<W, C> {
@@ -410,6 +1243,11 @@ public class WorkerWrapper<T, V> {
          */
         private String id = UUID.randomUUID().toString();
 
+        /**
+         * id是否由调用方指定，指定了的wrapper在重新构建的图之间共用学到的耗时
+         */
+        private boolean stableId;
+
         /**
          * worker要处理的参数
          */
@@ -442,6 +1280,21 @@ public class WorkerWrapper<T, V> {
 
         private boolean needCheckNextWrapperResult = true;
 
+        private int quorum;
+
+        private boolean output;
+
+        private List<WorkerWrapper<?, ?>> reads;
+
+        private Workload workload = Workload.AUTO;
+
+        /**
+         * 条件边，key是下游或上游wrapper
+         */
+        private Map<WorkerWrapper<?, ?>, Predicate<? super C>> nextConditions;
+
+        private Map<WorkerWrapper<?, ?>, Predicate<?>> dependConditions;
+
         public Builder<W, C> worker(IWorker<W, C> worker) {
             this.worker = worker;
             return this;
@@ -455,6 +1308,7 @@ public class WorkerWrapper<T, V> {
         public Builder<W, C> id(String id) {
             if (id != null) {
                 this.id = id;
+                this.stableId = true;
             }
             return this;
         }
@@ -469,6 +1323,35 @@ public class WorkerWrapper<T, V> {
             return this;
         }
 
+        /**
+         * 标记为图的输出：开启 {@link com.poldroc.async.executor.Async#setDropConsumedResults(boolean)} 时，
+         * 结果也保留到beginWork返回之后
+         */
+        public Builder<W, C> output() {
+            this.output = true;
+            return this;
+        }
+
+        /**
+         * 声明worker还会读这些不是上游的wrapper的结果，它们的结果要等自己结束后才能丢掉
+         */
+        public Builder<W, C> reads(WorkerWrapper<?, ?>... wrappers) {
+            if (reads == null) {
+                reads = new ArrayList<>();
+            }
+            Collections.addAll(reads, wrappers);
+            return this;
+        }
+
+        /**
+         * 指定worker的类型，线程池是 {@link com.poldroc.async.executor.WorkloadRoutingExecutor} 时据此选择线程池，
+         * 默认AUTO按执行时测得的CPU时间比例自动分类
+         */
+        public Builder<W, C> workload(Workload workload) {
+            this.workload = workload == null ? Workload.AUTO : workload;
+            return this;
+        }
+
         public Builder<W, C> depend(WorkerWrapper<?, ?>... wrappers) {
             if (wrappers == null) {
                 return this;
@@ -495,6 +1378,39 @@ public class WorkerWrapper<T, V> {
             return this;
         }
 
+        /**
+         * 条件依赖：wrapper成功后，它的结果满足condition才执行自己，否则自己和只能由自己触发的下游整体跳过
+         */
+        public <U> Builder<W, C> depend(WorkerWrapper<?, U> wrapper, Predicate<? super U> condition) {
+            if (wrapper == null) {
+                return this;
+            }
+            if (dependConditions == null) {
+                dependConditions = new IdentityHashMap<>();
+            }
+            dependConditions.put(wrapper, condition);
+            return depend(wrapper);
+        }
+
+        /**
+         * K-of-N汇合：依赖的wrapper中有quorum个成功就执行，剩下的上游会被取消。
+         * 设置后该wrapper的所有依赖（包括其他方式添加的）都按quorum计算，must不再生效
+         */
+        public Builder<W, C> dependQuorum(int quorum, WorkerWrapper<?, ?>... wrappers) {
+            if (wrappers == null || quorum < 1 || quorum > wrappers.length) {
+                throw new IllegalArgumentException("quorum must be between 1 and the number of wrappers");
+            }
+            this.quorum = quorum;
+            return depend(wrappers);
+        }
+
+        /**
+         * 依赖的wrapper中第一个成功的到达后就执行，其余上游会被取消；全部失败时才失败
+         */
+        public Builder<W, C> dependFirstSuccess(WorkerWrapper<?, ?>... wrappers) {
+            return dependQuorum(1, wrappers);
+        }
+
         public Builder<W, C> next(WorkerWrapper<?, ?> wrapper, boolean selfIsMust) {
             if (nextWrappers == null) {
                 nextWrappers = new ArrayList<>();
@@ -504,7 +1420,8 @@ public class WorkerWrapper<T, V> {
             //强依赖自己
             if (selfIsMust) {
                 if (selfIsMustSet == null) {
-                    selfIsMustSet = new HashSet<>();
+                    // equals/hashCode会沿着上下游递归，这里只能按引用判断
+                    selfIsMustSet = Collections.newSetFromMap(new IdentityHashMap<>());
                 }
                 selfIsMustSet.add(wrapper);
             }
@@ -515,6 +1432,17 @@ public class WorkerWrapper<T, V> {
             return next(wrapper, true);
         }
 
+        /**
+         * 条件边：自己成功后结果满足condition才执行wrapper，否则wrapper和只能由它触发的下游整体跳过
+         */
+        public Builder<W, C> next(WorkerWrapper<?, ?> wrapper, Predicate<? super C> condition) {
+            if (nextConditions == null) {
+                nextConditions = new IdentityHashMap<>();
+            }
+            nextConditions.put(wrapper, condition);
+            return next(wrapper);
+        }
+
         public Builder<W, C> next(WorkerWrapper<?, ?>... wrappers) {
             if (wrappers == null) {
                 return this;
@@ -528,9 +1456,17 @@ public class WorkerWrapper<T, V> {
         public WorkerWrapper<W, C> build() {
             WorkerWrapper<W, C> wrapper = new WorkerWrapper<>(id, param, worker, callback);
             wrapper.setNeedCheckNextWrapperResult(needCheckNextWrapperResult);
+            wrapper.quorum = quorum;
+            wrapper.output = output;
+            wrapper.reads = reads;
+            wrapper.workload = workload;
+            if (stableId) {
+                wrapper.costNanos = ID_COSTS.get(worker.getClass()).computeIfAbsent(id, key -> new AtomicLong());
+            }
             if (dependWrappers != null) {
                 for (DependWrapper workerWrapper : dependWrappers) {
-                    workerWrapper.getDependWrapper().addNext(wrapper);
+                    WorkerWrapper<?, ?> upstream = workerWrapper.getDependWrapper();
+                    upstream.addNext(wrapper, dependConditions == null ? null : (Predicate) dependConditions.get(upstream));
                     wrapper.addDepend(workerWrapper);
                 }
             }
@@ -541,7 +1477,7 @@ public class WorkerWrapper<T, V> {
                         must = true;
                     }
                     workerWrapper.addDepend(wrapper, must);
-                    wrapper.addNext(workerWrapper);
+                    wrapper.addNext(workerWrapper, nextConditions == null ? null : nextConditions.get(workerWrapper));
                 }
             }
 
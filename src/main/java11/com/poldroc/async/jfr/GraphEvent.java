@@ -0,0 +1,27 @@
+package com.poldroc.async.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * one Async.beginWork call
+ */
+@Name("com.poldroc.async.Graph")
+@Label("Graph Execution")
+@Category("roc-async")
+@Description("One Async.beginWork call, from start until all wrappers finished or the timeout")
+@StackTrace(false)
+class GraphEvent extends Event {
+
+    @Label("Execution Id")
+    long executionId;
+
+    @Label("Node Count")
+    int nodeCount;
+
+    @Label("Timeout")
+    @Timespan(Timespan.MILLISECONDS)
+    long timeout;
+
+    @Label("Success")
+    boolean success;
+}
@@ -0,0 +1,112 @@
+package com.poldroc.async.jfr;
+
+import com.poldroc.async.worker.ResultState;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+/**
+ * Java Flight Recorder events of the engine, Java 11 variant.
+ * <p>
+ * must keep exactly the same public API as the Java 8 variant in src/main/java
+ */
+public final class JfrEvents {
+
+    /**
+     * whether flight recorder events are compiled in, see the Java 8 variant.
+     * {@code -Droc.async.jfr.disabled=true} removes the instrumentation altogether
+     */
+    public static final boolean AVAILABLE = available();
+
+    private JfrEvents() {
+    }
+
+    private static boolean available() {
+        return !Boolean.getBoolean("roc.async.jfr.disabled");
+    }
+
+    public static Object beginGraph() {
+        GraphEvent event = new GraphEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    public static void endGraph(Object event, long executionId, int nodeCount, long timeout, boolean success) {
+        GraphEvent graphEvent = (GraphEvent) event;
+        graphEvent.end();
+        if (graphEvent.shouldCommit()) {
+            graphEvent.executionId = executionId;
+            graphEvent.nodeCount = nodeCount;
+            graphEvent.timeout = timeout;
+            graphEvent.success = success;
+            graphEvent.commit();
+        }
+    }
+
+    public static Object beginQueued() {
+        NodeQueuedEvent event = new NodeQueuedEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    public static void endQueued(Object event, long executionId, WorkerWrapper<?, ?> wrapper) {
+        NodeQueuedEvent queuedEvent = (NodeQueuedEvent) event;
+        queuedEvent.end();
+        if (queuedEvent.shouldCommit()) {
+            queuedEvent.executionId = executionId;
+            queuedEvent.wrapperId = wrapper.getId();
+            queuedEvent.workerClass = wrapper.getWorker().getClass();
+            queuedEvent.commit();
+        }
+    }
+
+    public static Object beginNode() {
+        NodeEvent event = new NodeEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    public static void endNode(Object event) {
+        ((NodeEvent) event).end();
+    }
+
+    public static void commitNode(Object event, long executionId, WorkerWrapper<?, ?> wrapper, ResultState state) {
+        NodeEvent nodeEvent = (NodeEvent) event;
+        if (nodeEvent.shouldCommit()) {
+            nodeEvent.executionId = executionId;
+            nodeEvent.wrapperId = wrapper.getId();
+            nodeEvent.workerClass = wrapper.getWorker().getClass();
+            nodeEvent.state = state.name();
+            nodeEvent.commit();
+        }
+    }
+
+    public static void nodeAborted(long executionId, WorkerWrapper<?, ?> wrapper, ResultState state, boolean skipped) {
+        if (state == ResultState.TIMEOUT) {
+            NodeTimeoutEvent event = new NodeTimeoutEvent();
+            if (event.isEnabled()) {
+                event.executionId = executionId;
+                event.wrapperId = wrapper.getId();
+                event.workerClass = wrapper.getWorker().getClass();
+                event.commit();
+            }
+            return;
+        }
+        NodeSkippedEvent event = new NodeSkippedEvent();
+        if (event.isEnabled()) {
+            event.executionId = executionId;
+            event.wrapperId = wrapper.getId();
+            event.workerClass = wrapper.getWorker().getClass();
+            event.state = state.name();
+            event.nextStarted = skipped;
+            event.commit();
+        }
+    }
+}
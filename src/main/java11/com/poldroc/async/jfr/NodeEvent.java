@@ -0,0 +1,26 @@
+package com.poldroc.async.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * a worker action, from start to finish
+ */
+@Name("com.poldroc.async.Node")
+@Label("Node Execution")
+@Category("roc-async")
+@Description("A worker action, from start to finish, with the resulting state")
+@StackTrace(false)
+class NodeEvent extends Event {
+
+    @Label("Execution Id")
+    long executionId;
+
+    @Label("Wrapper Id")
+    String wrapperId;
+
+    @Label("Worker Class")
+    Class<?> workerClass;
+
+    @Label("State")
+    String state;
+}
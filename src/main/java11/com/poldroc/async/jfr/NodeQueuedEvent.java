@@ -0,0 +1,23 @@
+package com.poldroc.async.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * a wrapper waiting in the executor queue
+ */
+@Name("com.poldroc.async.NodeQueued")
+@Label("Node Queued")
+@Category("roc-async")
+@Description("A wrapper waiting in the executor queue, from being submitted until a thread picked it up")
+@StackTrace(false)
+class NodeQueuedEvent extends Event {
+
+    @Label("Execution Id")
+    long executionId;
+
+    @Label("Wrapper Id")
+    String wrapperId;
+
+    @Label("Worker Class")
+    Class<?> workerClass;
+}
@@ -0,0 +1,30 @@
+package com.poldroc.async.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * a wrapper that did not run
+ */
+@Name("com.poldroc.async.NodeSkipped")
+@Label("Node Skipped")
+@Category("roc-async")
+@Description("A wrapper that did not run, because its next chain had already started or an upstream failed")
+@StackTrace(false)
+class NodeSkippedEvent extends Event {
+
+    @Label("Execution Id")
+    long executionId;
+
+    @Label("Wrapper Id")
+    String wrapperId;
+
+    @Label("Worker Class")
+    Class<?> workerClass;
+
+    @Label("State")
+    String state;
+
+    @Label("Next Started")
+    @Description("True if skipped because a wrapper on its next chain had already started")
+    boolean nextStarted;
+}
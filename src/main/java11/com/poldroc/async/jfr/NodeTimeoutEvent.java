@@ -0,0 +1,23 @@
+package com.poldroc.async.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * a wrapper stopped by a timeout
+ */
+@Name("com.poldroc.async.NodeTimeout")
+@Label("Node Timeout")
+@Category("roc-async")
+@Description("A wrapper stopped because the graph or its upstream timed out")
+@StackTrace(false)
+class NodeTimeoutEvent extends Event {
+
+    @Label("Execution Id")
+    long executionId;
+
+    @Label("Wrapper Id")
+    String wrapperId;
+
+    @Label("Worker Class")
+    Class<?> workerClass;
+}
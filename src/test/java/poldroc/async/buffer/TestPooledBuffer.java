@@ -0,0 +1,140 @@
+package poldroc.async.buffer;
+
+
+import com.poldroc.async.buffer.BufferPool;
+import com.poldroc.async.buffer.PooledBuffer;
+import com.poldroc.async.callback.CallbackDispatcher;
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.worker.IWorker;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 堆外buffer结果
+ * <pre>
+ *          --- sum ---
+ * render                --- report
+ *          --- xor ---
+ * </pre>
+ * render返回4MB的堆外buffer，sum和xor不拷贝直接读，两者都结束后buffer自动回到池子，重复执行只分配一次。
+ * 回调异步分发时，buffer在回调执行完之前不会被下游结束后回收
+ */
+public class TestPooledBuffer {
+
+    private static final int SIZE = 4 << 20;
+
+    public static void main(String[] args) throws Exception {
+        BufferPool pool = new BufferPool(4 << 10, 16 << 20, 64L << 20);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+        IWorker<Integer, PooledBuffer> renderWorker = (param, allWrappers) -> {
+            PooledBuffer pooled = pool.acquire(SIZE);
+            ByteBuffer buffer = pooled.buffer();
+            while (buffer.hasRemaining()) {
+                buffer.put((byte) (buffer.position() * param));
+            }
+            buffer.flip();
+            return pooled;
+        };
+        WorkerWrapper<Integer, PooledBuffer> render = new WorkerWrapper.Builder<Integer, PooledBuffer>()
+                .id("render")
+                .worker(renderWorker)
+                .param(7)
+                .build();
+        WorkerWrapper<Void, Long> sum = new WorkerWrapper.Builder<Void, Long>()
+                .id("sum")
+                .worker((param, allWrappers) -> {
+                    ByteBuffer view = render.getWorkResult().getResult().view();
+                    long total = 0;
+                    while (view.hasRemaining()) {
+                        total += view.get() & 0xff;
+                    }
+                    return total;
+                })
+                .depend(render)
+                .build();
+        WorkerWrapper<Void, Integer> xor = new WorkerWrapper.Builder<Void, Integer>()
+                .id("xor")
+                .worker((param, allWrappers) -> {
+                    ByteBuffer view = render.getWorkResult().getResult().view();
+                    int x = 0;
+                    while (view.remaining() >= 4) {
+                        x ^= view.getInt();
+                    }
+                    return x;
+                })
+                .depend(render)
+                .build();
+        WorkerWrapper<Void, String> report = new WorkerWrapper.Builder<Void, String>()
+                .id("report")
+                .worker((param, allWrappers) -> "sum=" + sum.getWorkResult().getResult() + " xor=" + xor.getWorkResult().getResult())
+                .depend(sum, xor)
+                .build();
+
+        for (int i = 0; i < 50; i++) {
+            Async.beginWork(5000, executorService, render);
+        }
+        System.out.println(report.getWorkResult().getResult());
+        System.out.println("render buffer refCount " + render.getWorkResult().getResult().refCount()
+                + ", direct allocations " + pool.getAllocatedCount() + ", pooled bytes " + pool.getPooledBytes());
+
+        testAsyncCallback(pool, renderWorker, executorService);
+        executorService.shutdown();
+    }
+
+    private static void testAsyncCallback(BufferPool pool, IWorker<Integer, PooledBuffer> renderWorker,
+                                          ExecutorService executorService) throws Exception {
+        ExecutorService callbackExecutor = Executors.newSingleThreadExecutor();
+        CallbackDispatcher dispatcher = new CallbackDispatcher(callbackExecutor);
+        Async.setCallbackDispatcher(dispatcher);
+        String[] outcome = new String[1];
+        WorkerWrapper<Integer, PooledBuffer> render = new WorkerWrapper.Builder<Integer, PooledBuffer>()
+                .worker(renderWorker)
+                .callback((success, param, workResult) -> {
+                    // 下游早已结束，buffer仍然由回调持有
+                    sleep(100);
+                    try {
+                        ByteBuffer view = workResult.getResult().view();
+                        boolean intact = true;
+                        for (int i = 0; i < view.limit(); i++) {
+                            intact &= view.get(i) == (byte) (i * param);
+                        }
+                        outcome[0] = intact ? "intact" : "overwritten";
+                    } catch (IllegalStateException e) {
+                        outcome[0] = "released";
+                    }
+                })
+                .param(7)
+                .build();
+        new WorkerWrapper.Builder<Void, Integer>()
+                .worker((param, allWrappers) -> render.getWorkResult().getResult().view().get(1) & 0xff)
+                .depend(render)
+                .build();
+
+        Async.beginWork(5000, executorService, render);
+        // 回调执行期间别人从池子里借到同样大小的buffer并写入
+        PooledBuffer other = pool.acquire(SIZE);
+        ByteBuffer buffer = other.buffer();
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0);
+        }
+        other.release();
+        dispatcher.awaitIdle(5, TimeUnit.SECONDS);
+        System.out.println("async callback saw buffer " + outcome[0] + ", refCount after delivery "
+                + render.getWorkResult().getResult().refCount());
+        Async.setCallbackDispatcher(null);
+        callbackExecutor.shutdown();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package poldroc.async.cancel;
+
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.wrapper.CancellationToken;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 协作式取消测试
+ * <p>
+ * 0---1
+ * 0是一个不看超时的长循环，总超时200ms后应该在几毫秒内退出，注册的onCancel回调被执行，1不会执行
+ */
+public class TestCancel {
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        CountDownLatch stopped = new CountDownLatch(1);
+
+        WorkerWrapper<String, String> workerWrapper1 = new WorkerWrapper.Builder<String, String>()
+                .worker((param, allWrappers) -> "1")
+                .param("1")
+                .build();
+
+        WorkerWrapper<String, Long> workerWrapper = new WorkerWrapper.Builder<String, Long>()
+                .worker((param, allWrappers) -> {
+                    CancellationToken token = CancellationToken.current();
+                    System.out.println("remaining " + token.remainingMillis() + "ms");
+                    token.onCancel(() -> System.out.println("onCancel: abort the in-flight call"));
+                    long loops = 0;
+                    while (!token.isCancelled()) {
+                        loops++;
+                        Thread.yield();
+                    }
+                    stopped.countDown();
+                    return loops;
+                })
+                .param("0")
+                .next(workerWrapper1)
+                .build();
+
+        long now = System.currentTimeMillis();
+        boolean success = Async.beginWork(200, workerWrapper);
+        System.out.println("success " + success + ", cost " + (System.currentTimeMillis() - now));
+        System.out.println("worker stopped " + stopped.await(50, TimeUnit.MILLISECONDS)
+                + ", cost " + (System.currentTimeMillis() - now));
+        System.out.println(workerWrapper.getWorkResult());
+        System.out.println(workerWrapper1.getWorkResult());
+        System.out.println("outside a worker: " + CancellationToken.current().isCancelled());
+        Async.shutDown();
+    }
+}
@@ -0,0 +1,88 @@
+package poldroc.async.checkpoint;
+
+
+import com.poldroc.async.checkpoint.CheckpointSerializer;
+import com.poldroc.async.checkpoint.CheckpointStore;
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.worker.IWorker;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * checkpoint恢复
+ * <pre>
+ * a --- b --- c
+ * </pre>
+ * 第一次执行c失败（模拟进程中途挂掉），a、b的结果已经记录；重新打开journal（模拟重启）用同一个执行id再执行，
+ * a、b直接恢复，只有c真正执行；换一个执行id则全部重新执行
+ */
+public class TestCheckpoint {
+    public static void main(String[] args) throws Exception {
+        Path journal = Files.createTempFile("roc-async", ".checkpoint");
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        Map<String, Integer> runs = new ConcurrentHashMap<>();
+        AtomicBoolean crash = new AtomicBoolean(true);
+
+        try (CheckpointStore store = CheckpointStore.open(journal, CheckpointSerializer.JAVA)) {
+            WorkerWrapper<Integer, Integer> a = build(runs, crash);
+            Async.beginWork(1000, executorService, Collections.singletonList(a), store, "job-1");
+            System.out.println("first run: " + runs + ", recorded " + store.size());
+        }
+
+        crash.set(false);
+        runs.clear();
+        try (CheckpointStore store = CheckpointStore.open(journal, CheckpointSerializer.JAVA)) {
+            WorkerWrapper<Integer, Integer> a = build(runs, crash);
+            Async.beginWork(1000, executorService, Collections.singletonList(a), store, "job-1");
+            System.out.println("resumed: " + runs + ", c = " + store.restore("job-1", "c"));
+
+            runs.clear();
+            a = build(runs, crash);
+            Async.beginWork(1000, executorService, Collections.singletonList(a), store, "job-2");
+            System.out.println("new execution id: " + runs + ", recorded " + store.size());
+        } finally {
+            Files.delete(journal);
+            executorService.shutdown();
+        }
+    }
+
+    private static WorkerWrapper<Integer, Integer> build(Map<String, Integer> runs, AtomicBoolean crash) {
+        WorkerWrapper<Integer, Integer> c = new WorkerWrapper.Builder<Integer, Integer>()
+                .id("c")
+                .worker(worker("c", "b", runs, crash))
+                .build();
+        WorkerWrapper<Integer, Integer> b = new WorkerWrapper.Builder<Integer, Integer>()
+                .id("b")
+                .worker(worker("b", "a", runs, null))
+                .next(c)
+                .build();
+        return new WorkerWrapper.Builder<Integer, Integer>()
+                .id("a")
+                .worker(worker("a", null, runs, null))
+                .param(1)
+                .next(b)
+                .build();
+    }
+
+    private static IWorker<Integer, Integer> worker(String id, String upstream, Map<String, Integer> runs, AtomicBoolean crash) {
+        return (param, allWrappers) -> {
+            runs.merge(id, 1, Integer::sum);
+            if (crash != null && crash.get()) {
+                throw new IllegalStateException(id + " crashed");
+            }
+            if (upstream == null) {
+                return param;
+            }
+            // 恢复出来的上游结果和真正执行的一样可以读到
+            return (Integer) allWrappers.get(upstream).getWorkResult().getResult() * 10;
+        };
+    }
+}
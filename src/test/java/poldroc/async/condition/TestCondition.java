@@ -0,0 +1,104 @@
+package poldroc.async.condition;
+
+
+import com.poldroc.async.callback.ICallback;
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.worker.WorkResult;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 条件边
+ * <pre>
+ *        (>10)  b --- c
+ *     a
+ *        (<=10) d
+ * </pre>
+ * a返回5：b、c整体跳过，不执行worker，每个只有一次失败回调；d执行
+ * <pre>
+ *        (throws) y --- z
+ *     x
+ *                 w
+ * </pre>
+ * 条件本身抛异常：y按这个异常失败，z按上游失败处理，w照常执行，整个执行不会等到超时
+ */
+public class TestCondition {
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        AtomicInteger actions = new AtomicInteger();
+        AtomicInteger callbacks = new AtomicInteger();
+        ICallback<Integer, Integer> callback = new ICallback<Integer, Integer>() {
+            @Override
+            public void result(boolean success, Integer param, WorkResult<Integer> workResult) {
+                callbacks.incrementAndGet();
+                System.out.println("callback " + param + " success " + success + " " + workResult.getResultState());
+            }
+        };
+
+        WorkerWrapper<Integer, Integer> c = new WorkerWrapper.Builder<Integer, Integer>()
+                .worker((param, allWrappers) -> actions.incrementAndGet())
+                .callback(callback)
+                .param(3)
+                .build();
+        WorkerWrapper<Integer, Integer> b = new WorkerWrapper.Builder<Integer, Integer>()
+                .worker((param, allWrappers) -> actions.incrementAndGet())
+                .callback(callback)
+                .param(2)
+                .next(c)
+                .build();
+        WorkerWrapper<Integer, Integer> d = new WorkerWrapper.Builder<Integer, Integer>()
+                .worker((param, allWrappers) -> actions.incrementAndGet())
+                .callback(callback)
+                .param(4)
+                .build();
+        WorkerWrapper<Integer, Integer> a = new WorkerWrapper.Builder<Integer, Integer>()
+                .worker((param, allWrappers) -> param)
+                .callback(callback)
+                .param(5)
+                .next(b, result -> result > 10)
+                .next(d, result -> result <= 10)
+                .build();
+
+        System.out.println("success " + Async.beginWork(1000, a));
+        System.out.println("actions " + actions.get() + ", callbacks " + callbacks.get());
+        System.out.println("b " + b.getWorkResult().getResultState() + ", c " + c.getWorkResult().getResultState()
+                + ", d " + d.getWorkResult().getResultState());
+
+        a.setParam(50);
+        actions.set(0);
+        callbacks.set(0);
+        System.out.println("success " + Async.beginWork(1000, a));
+        System.out.println("actions " + actions.get() + ", callbacks " + callbacks.get());
+        System.out.println("b " + b.getWorkResult().getResultState() + ", c " + c.getWorkResult().getResultState()
+                + ", d " + d.getWorkResult().getResultState());
+
+        WorkerWrapper<Integer, Integer> z = new WorkerWrapper.Builder<Integer, Integer>()
+                .worker((param, allWrappers) -> actions.incrementAndGet())
+                .param(7)
+                .build();
+        WorkerWrapper<Integer, Integer> y = new WorkerWrapper.Builder<Integer, Integer>()
+                .worker((param, allWrappers) -> actions.incrementAndGet())
+                .param(6)
+                .next(z)
+                .build();
+        WorkerWrapper<Integer, Integer> w = new WorkerWrapper.Builder<Integer, Integer>()
+                .worker((param, allWrappers) -> actions.incrementAndGet())
+                .param(8)
+                .build();
+        WorkerWrapper<Integer, Integer> x = new WorkerWrapper.Builder<Integer, Integer>()
+                .worker((param, allWrappers) -> param)
+                .param(5)
+                .next(y, result -> {
+                    throw new IllegalStateException("broken condition");
+                })
+                .next(w)
+                .build();
+        actions.set(0);
+        long now = System.currentTimeMillis();
+        System.out.println("success " + Async.beginWork(1000, x) + ", cost " + (System.currentTimeMillis() - now));
+        System.out.println("actions " + actions.get() + ", y " + y.getWorkResult().getResultState() + " " + y.getWorkResult().getEx()
+                + ", z " + z.getWorkResult().getResultState() + ", w " + w.getWorkResult().getResultState());
+        Async.shutDown();
+    }
+}
@@ -0,0 +1,87 @@
+package poldroc.async.dispatch;
+
+
+import com.poldroc.async.callback.CallbackDispatcher;
+import com.poldroc.async.callback.ICallback;
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.worker.IWorker;
+import com.poldroc.async.worker.WorkResult;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * callback异步分发
+ * <pre>
+ * w0 (10ms) --- w1 (10ms) --- w2 (10ms)，每个callback的result耗时20ms
+ * </pre>
+ * 同步执行时callback在关键路径上，总耗时约90ms；异步分发后约30ms，callback之后在分发器线程里按begin、result的顺序执行
+ */
+public class TestCallbackDispatch {
+    public static void main(String[] args) throws Exception {
+        ExecutorService callbackPool = Executors.newSingleThreadExecutor();
+        List<String> events = new CopyOnWriteArrayList<>();
+
+        System.out.printf("sync: %dms%n", run(events));
+
+        CallbackDispatcher dispatcher = new CallbackDispatcher(callbackPool);
+        Async.setCallbackDispatcher(dispatcher);
+        events.clear();
+        System.out.printf("dispatched: %dms, callbacks pending %d%n", run(events), dispatcher.getBacklog());
+        System.out.println("idle " + dispatcher.awaitIdle(1, TimeUnit.SECONDS));
+        System.out.println(events);
+
+        Async.setCallbackDispatcher(null);
+        callbackPool.shutdown();
+        Async.shutDown();
+    }
+
+    private static long run(List<String> events) throws Exception {
+        WorkerWrapper<String, String> w2 = build("w2", events, null);
+        WorkerWrapper<String, String> w1 = build("w1", events, w2);
+        WorkerWrapper<String, String> w0 = build("w0", events, w1);
+        long now = System.currentTimeMillis();
+        Async.beginWork(1000, w0);
+        return System.currentTimeMillis() - now;
+    }
+
+    private static WorkerWrapper<String, String> build(String id, List<String> events, WorkerWrapper<String, String> next) {
+        IWorker<String, String> worker = (param, allWrappers) -> {
+            sleep(10);
+            return param;
+        };
+        ICallback<String, String> callback = new ICallback<String, String>() {
+            @Override
+            public void begin() {
+                events.add(id + " begin");
+            }
+
+            @Override
+            public void result(boolean success, String param, WorkResult<String> workResult) {
+                sleep(20);
+                events.add(id + " " + workResult.getResultState());
+            }
+        };
+        WorkerWrapper.Builder<String, String> builder = new WorkerWrapper.Builder<String, String>()
+                .id(id)
+                .worker(worker)
+                .callback(callback)
+                .param(id);
+        if (next != null) {
+            builder.next(next);
+        }
+        return builder.build();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
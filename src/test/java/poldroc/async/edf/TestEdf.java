@@ -0,0 +1,82 @@
+package poldroc.async.edf;
+
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.executor.EdfExecutor;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 最早截止时间优先
+ * <p>
+ * 单线程的线程池上先跑一个宽松的图（根节点扇出6个50ms的节点，超时5s），20ms后提交一个紧急的图（一个10ms的节点，超时100ms）。
+ * FIFO线程池上紧急的图排在6个节点后面，会超时；EDF线程池上紧急的图插队，能按时完成。
+ * 最后再提交一个超时15ms的图，出队时已经过期，不会执行worker
+ */
+public class TestEdf {
+    public static void main(String[] args) throws Exception {
+        System.out.println("fifo:");
+        run(Executors.newFixedThreadPool(1));
+        System.out.println("edf:");
+        EdfExecutor edf = new EdfExecutor(1);
+        run(edf);
+        System.out.println("expired at dequeue " + edf.getExpiredCount());
+    }
+
+    private static void run(ExecutorService executorService) throws Exception {
+        WorkerWrapper.Builder<String, String> rootBuilder = new WorkerWrapper.Builder<String, String>()
+                .worker((param, allWrappers) -> param)
+                .param("relaxed");
+        for (int i = 0; i < 6; i++) {
+            rootBuilder.next(sleeper("relaxed-" + i, 50));
+        }
+        WorkerWrapper<String, String> relaxed = rootBuilder.build();
+        WorkerWrapper<String, String> urgent = sleeper("urgent", 10);
+        WorkerWrapper<String, String> hopeless = sleeper("hopeless", 10);
+
+        long now = System.currentTimeMillis();
+        Thread background = new Thread(() -> {
+            try {
+                Async.beginWork(5000, executorService, relaxed);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        background.start();
+        Thread.sleep(20);
+        Thread third = new Thread(() -> {
+            try {
+                Thread.sleep(10);
+                Async.beginWork(15, executorService, hopeless);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        third.start();
+        boolean success = Async.beginWork(100, executorService, urgent);
+        System.out.println("  urgent success " + success + " after " + (System.currentTimeMillis() - now) + "ms, "
+                + urgent.getWorkResult().getResultState());
+        background.join();
+        third.join();
+        System.out.println("  hopeless " + hopeless.getWorkResult().getResultState() + ", relaxed done after "
+                + (System.currentTimeMillis() - now) + "ms");
+        executorService.shutdown();
+    }
+
+    private static WorkerWrapper<String, String> sleeper(String id, long sleepTime) {
+        return new WorkerWrapper.Builder<String, String>()
+                .worker((param, allWrappers) -> {
+                    try {
+                        Thread.sleep(sleepTime);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return param;
+                })
+                .param(id)
+                .id(id)
+                .build();
+    }
+}
@@ -0,0 +1,92 @@
+package poldroc.async.incremental;
+
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.worker.IWorker;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 增量执行
+ * <pre>
+ * user --- profile ---
+ *                      --- page
+ * locale --- theme ---
+ * </pre>
+ * 只修改locale的param时只有theme和page重新计算；invalidate profile时profile和page重新计算
+ */
+public class TestIncremental {
+    public static void main(String[] args) throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        Set<String> ran = new ConcurrentSkipListSet<>();
+
+        WorkerWrapper<Void, String> page = new WorkerWrapper.Builder<Void, String>()
+                .id("page")
+                .worker((param, allWrappers) -> {
+                    ran.add("page");
+                    return allWrappers.get("profile").getWorkResult().getResult() + " / " + allWrappers.get("theme").getWorkResult().getResult();
+                })
+                .build();
+        WorkerWrapper<Void, String> profile = derived("profile", "user", ran, page);
+        WorkerWrapper<Void, String> theme = derived("theme", "locale", ran, page);
+        WorkerWrapper<String, String> user = root("user", "u42", ran, profile);
+        WorkerWrapper<String, String> locale = root("locale", "en", ran, theme);
+        List<WorkerWrapper> roots = Arrays.asList(user, locale);
+
+        Async.beginWorkIncremental(1000, executorService, roots);
+        System.out.println("first run:        " + ran + " -> " + page.getWorkResult().getResult());
+
+        ran.clear();
+        Async.beginWorkIncremental(1000, executorService, roots);
+        System.out.println("nothing changed:  " + ran + " -> " + page.getWorkResult().getResult());
+
+        ran.clear();
+        locale.setParam("fr");
+        Async.beginWorkIncremental(1000, executorService, roots);
+        System.out.println("locale changed:   " + ran + " -> " + page.getWorkResult().getResult());
+
+        ran.clear();
+        profile.invalidate();
+        Async.beginWorkIncremental(1000, executorService, roots);
+        System.out.println("profile invalid:  " + ran + " -> " + page.getWorkResult().getResult());
+
+        ran.clear();
+        Async.beginWork(1000, executorService, roots);
+        System.out.println("full run:         " + ran);
+        executorService.shutdown();
+    }
+
+    private static WorkerWrapper<String, String> root(String id, String param, Set<String> ran, WorkerWrapper<?, ?> next) {
+        return new WorkerWrapper.Builder<String, String>()
+                .id(id)
+                .worker(worker(id, ran))
+                .param(param)
+                .next(next)
+                .build();
+    }
+
+    private static WorkerWrapper<Void, String> derived(String id, String upstream, Set<String> ran, WorkerWrapper<?, ?> next) {
+        IWorker<Void, String> worker = (p, allWrappers) -> {
+            ran.add(id);
+            return id + "(" + allWrappers.get(upstream).getWorkResult().getResult() + ")";
+        };
+        return new WorkerWrapper.Builder<Void, String>()
+                .id(id)
+                .worker(worker)
+                .next(next)
+                .build();
+    }
+
+    private static IWorker<String, String> worker(String id, Set<String> ran) {
+        return (param, allWrappers) -> {
+            ran.add(id);
+            return param;
+        };
+    }
+}
@@ -0,0 +1,106 @@
+package poldroc.async.jmx;
+
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.jmx.AsyncMonitoring;
+import com.poldroc.async.metrics.HistogramMetricsCollector;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过JMX读引擎、线程池和worker的指标，和jconsole看到的一样
+ * <pre>
+ *        ---- fast ----
+ * start |              |---- end
+ *        ---- slow ----
+ * </pre>
+ * 注册后跑6秒，引擎每5秒采样一次，之后能读到每秒图数；slow有10%超过超时时间
+ */
+public class TestJmx {
+    public static void main(String[] args) throws Exception {
+        Async.setMetricsCollector(new HistogramMetricsCollector(WorkerWrapper::getId));
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        // 最近一次beginWork用的线程池在注册时被自动发现，它自己的拒绝策略不会被替换
+        RejectedExecutionHandler handler = new ThreadPoolExecutor.CallerRunsPolicy();
+        ThreadPoolExecutor discovered = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), handler);
+        Async.beginWork(100, discovered, new WorkerWrapper.Builder<Void, String>()
+                .worker((param, allWrappers) -> "discovered")
+                .build());
+        AsyncMonitoring.register();
+        AsyncMonitoring.registerExecutor("demo", executorService);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName discoveredName = new ObjectName("com.poldroc.async:type=Executor,name="
+                + ObjectName.quote("ThreadPoolExecutor@" + Integer.toHexString(System.identityHashCode(discovered))));
+        System.out.println("discovered handler kept " + (discovered.getRejectedExecutionHandler() == handler)
+                + ", RejectedCount=" + server.getAttribute(discoveredName, "RejectedCount"));
+
+        long end = System.currentTimeMillis() + 6000;
+        int run = 0;
+        while (System.currentTimeMillis() < end) {
+            int slowMillis = run++ % 10 == 0 ? 40 : 5;
+            WorkerWrapper<Void, String> last = new WorkerWrapper.Builder<Void, String>()
+                    .id("end")
+                    .worker((param, allWrappers) -> "done")
+                    .build();
+            WorkerWrapper<Void, String> fast = new WorkerWrapper.Builder<Void, String>()
+                    .id("fast")
+                    .worker((param, allWrappers) -> "fast")
+                    .next(last)
+                    .build();
+            WorkerWrapper<Void, String> slow = new WorkerWrapper.Builder<Void, String>()
+                    .id("slow")
+                    .worker((param, allWrappers) -> {
+                        sleep(slowMillis);
+                        return "slow";
+                    })
+                    .next(last)
+                    .build();
+            WorkerWrapper<Void, String> start = new WorkerWrapper.Builder<Void, String>()
+                    .id("start")
+                    .worker((param, allWrappers) -> "start")
+                    .next(fast, slow)
+                    .build();
+            Async.beginWork(20, executorService, start);
+        }
+
+        print(server, "com.poldroc.async:type=Engine",
+                "GraphCount", "GraphTimeoutCount", "GraphsPerSecond", "TimeoutRatio", "GraphLatencyP99Micros");
+        print(server, "com.poldroc.async:type=Executor,name=\"demo\"",
+                "Type", "PoolSize", "ActiveCount", "QueueSize", "CompletedTaskCount", "RejectedCount");
+        print(server, "com.poldroc.async:type=Worker,name=\"slow\"",
+                "ExecutionP50Micros", "ExecutionP99Micros", "SuccessCount", "TimeoutCount", "PeakActiveCount");
+        print(server, "com.poldroc.async:type=Worker,name=\"fast\"",
+                "ExecutionP50Micros", "SuccessCount", "PeakActiveCount");
+
+        AsyncMonitoring.unregister();
+        System.out.println("registered after unregister: " + server.queryNames(new ObjectName("com.poldroc.async:*"), null));
+        executorService.shutdown();
+        discovered.shutdown();
+    }
+
+    private static void print(MBeanServer server, String name, String... attributes) throws Exception {
+        ObjectName objectName = new ObjectName(name);
+        StringBuilder builder = new StringBuilder(objectName.getKeyProperty("type")).append(":");
+        for (String attribute : attributes) {
+            builder.append(' ').append(attribute).append('=').append(server.getAttribute(objectName, attribute));
+        }
+        System.out.println(builder);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package poldroc.async.liveness;
+
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 中间结果的活跃区间
+ * <pre>
+ * load (16MB) --- parse --- audit --- summary
+ * </pre>
+ * audit除了上游parse还用reads声明读load。开启dropConsumedResults后，load的结果在parse和audit都结束后就被丢掉，
+ * parse的结果在audit结束后被丢掉，summary没有下游，作为输出保留；audit用output标记，也保留
+ */
+public class TestLiveness {
+    public static void main(String[] args) throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        WorkerWrapper<Integer, byte[]> load = new WorkerWrapper.Builder<Integer, byte[]>()
+                .id("load")
+                .worker((size, allWrappers) -> new byte[size])
+                .param(16 << 20)
+                .build();
+        WorkerWrapper<Void, Integer> parse = new WorkerWrapper.Builder<Void, Integer>()
+                .id("parse")
+                .worker((param, allWrappers) -> load.getWorkResult().getResult().length)
+                .depend(load)
+                .build();
+        WorkerWrapper<Void, String> audit = new WorkerWrapper.Builder<Void, String>()
+                .id("audit")
+                .worker((param, allWrappers) -> "parsed " + parse.getWorkResult().getResult()
+                        + " of " + load.getWorkResult().getResult().length + " bytes")
+                .depend(parse)
+                .reads(load)
+                .output()
+                .build();
+        WorkerWrapper<Void, String> summary = new WorkerWrapper.Builder<Void, String>()
+                .id("summary")
+                .worker((param, allWrappers) -> audit.getWorkResult().getResult().toUpperCase())
+                .depend(audit)
+                .build();
+
+        Async.beginWork(1000, executorService, load);
+        print("keep all", load, parse, audit, summary);
+
+        Async.setDropConsumedResults(true);
+        Async.beginWork(1000, executorService, load);
+        print("drop consumed", load, parse, audit, summary);
+        Async.setDropConsumedResults(false);
+        executorService.shutdown();
+    }
+
+    private static void print(String name, WorkerWrapper<?, ?>... wrappers) {
+        StringBuilder builder = new StringBuilder(name).append(":");
+        for (WorkerWrapper<?, ?> wrapper : wrappers) {
+            Object result = wrapper.getWorkResult().getResult();
+            builder.append(' ').append(wrapper.getId()).append('=')
+                    .append(result instanceof byte[] ? "byte[" + ((byte[]) result).length + "]" : result)
+                    .append('(').append(wrapper.getWorkResult().getResultState()).append(')');
+        }
+        System.out.println(builder);
+    }
+}
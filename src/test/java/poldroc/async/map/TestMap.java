@@ -0,0 +1,62 @@
+package poldroc.async.map;
+
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.worker.MapWorker;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 动态扇出
+ * <p>
+ * ids---map(每个id调用一次"服务"，最多4个并发，单个元素100ms超时)
+ * 20个元素每个50ms，id为7的元素耗时1000ms会超时取默认值，整体应该在300ms左右结束
+ */
+public class TestMap {
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+
+        WorkerWrapper<Integer, List<Integer>> ids = new WorkerWrapper.Builder<Integer, List<Integer>>()
+                .worker((count, allWrappers) -> {
+                    List<Integer> list = new ArrayList<>();
+                    for (int i = 0; i < count; i++) {
+                        list.add(i);
+                    }
+                    return list;
+                })
+                .param(20)
+                .build();
+
+        // 元素取上游ids的结果
+        MapWorker<Integer, String> mapWorker = MapWorker.<Integer, String>builder((id, allWrappers) -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(id == 7 ? 1000 : 50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "interrupted";
+            } finally {
+                concurrent.decrementAndGet();
+            }
+            return "item-" + id;
+        }).source(ids).parallelism(4).elementTimeout(100, TimeUnit.MILLISECONDS).build();
+
+        WorkerWrapper<Collection<? extends Integer>, List<String>> map = new WorkerWrapper.Builder<Collection<? extends Integer>, List<String>>()
+                .worker(mapWorker)
+                .depend(ids)
+                .build();
+
+        long now = System.currentTimeMillis();
+        System.out.println("success " + Async.beginWork(2000, ids) + ", cost " + (System.currentTimeMillis() - now));
+        System.out.println(map.getWorkResult());
+        System.out.println("max concurrent " + maxConcurrent.get());
+        Async.shutDown();
+    }
+}
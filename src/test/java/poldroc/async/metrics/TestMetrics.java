@@ -0,0 +1,65 @@
+package poldroc.async.metrics;
+
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.metrics.HistogramMetricsCollector;
+import com.poldroc.async.metrics.WorkerStats;
+import com.poldroc.async.wrapper.WorkerWrapper;
+import poldroc.async.parallel.ParWorker;
+import poldroc.async.parallel.ParWorker1;
+import poldroc.async.parallel.ParWorker2;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * metrics测试
+ * <p>
+ * 0---1
+ * 2
+ * 执行多次后打印每个worker的排队、执行耗时和结果计数
+ */
+public class TestMetrics {
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        HistogramMetricsCollector collector = new HistogramMetricsCollector();
+        Async.setMetricsCollector(collector);
+
+        ParWorker w = new ParWorker();
+        w.setSleepTime(50);
+        ParWorker1 w1 = new ParWorker1();
+        w1.setSleepTime(100);
+        ParWorker2 w2 = new ParWorker2();
+        w2.setSleepTime(300);
+
+        WorkerWrapper<String, String> workerWrapper2 = new WorkerWrapper.Builder<String, String>()
+                .worker(w2)
+                .callback(w2)
+                .param("2")
+                .build();
+
+        WorkerWrapper<String, String> workerWrapper1 = new WorkerWrapper.Builder<String, String>()
+                .worker(w1)
+                .callback(w1)
+                .param("1")
+                .build();
+
+        WorkerWrapper<String, String> workerWrapper = new WorkerWrapper.Builder<String, String>()
+                .worker(w)
+                .callback(w)
+                .param("0")
+                .next(workerWrapper1)
+                .build();
+
+        for (int i = 0; i < 5; i++) {
+            // 第3次以后w2会超时
+            Async.beginWork(i < 3 ? 1000 : 200, workerWrapper, workerWrapper2);
+        }
+
+        for (WorkerStats stats : collector.getWorkerStats()) {
+            System.out.println(stats);
+        }
+        System.out.println("graph: " + collector.getGraphLatency()
+                + " success=" + collector.getGraphSuccessCount()
+                + " timeout=" + collector.getGraphTimeoutCount());
+        Async.shutDown();
+    }
+}
@@ -2,7 +2,6 @@ package poldroc.async.parallel;
 
 
 import com.poldroc.async.callback.ICallback;
-import com.poldroc.async.timer.SystemClock;
 import com.poldroc.async.worker.IWorker;
 import com.poldroc.async.worker.WorkResult;
 import com.poldroc.async.wrapper.WorkerWrapper;
@@ -18,7 +17,7 @@ public class ParTimeoutWorker implements IWorker<String, String>, ICallback<Stri
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
-        return "result = " + SystemClock.now() + "---param = " + object + " from 0";
+        return "result = " + System.currentTimeMillis() + "---param = " + object + " from 0";
     }
 
 
@@ -35,10 +34,10 @@ public class ParTimeoutWorker implements IWorker<String, String>, ICallback<Stri
     @Override
     public void result(boolean success, String param, WorkResult<String> workResult) {
         if (success) {
-            System.out.println("callback worker0 success--" + SystemClock.now() + "----" + workResult.getResult()
+            System.out.println("callback worker0 success--" + System.currentTimeMillis() + "----" + workResult.getResult()
                     + "-threadName:" +Thread.currentThread().getName());
         } else {
-            System.err.println("callback worker0 failure--" + SystemClock.now() + "----"  + workResult.getResult()
+            System.err.println("callback worker0 failure--" + System.currentTimeMillis() + "----"  + workResult.getResult()
                     + "-threadName:" +Thread.currentThread().getName());
         }
     }
@@ -2,7 +2,6 @@ package poldroc.async.parallel;
 
 
 import com.poldroc.async.callback.ICallback;
-import com.poldroc.async.timer.SystemClock;
 import com.poldroc.async.worker.IWorker;
 import com.poldroc.async.worker.WorkResult;
 import com.poldroc.async.wrapper.WorkerWrapper;
@@ -23,7 +22,7 @@ public class ParWorker1 implements IWorker<String, String>, ICallback<String, St
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
-        return "result = " + SystemClock.now() + "---param = " + object + " from 1";
+        return "result = " + System.currentTimeMillis() + "---param = " + object + " from 1";
     }
 
     @Override
@@ -39,10 +38,10 @@ public class ParWorker1 implements IWorker<String, String>, ICallback<String, St
     @Override
     public void result(boolean success, String param, WorkResult<String> workResult) {
         if (success) {
-            System.out.println("callback worker1 success--" + SystemClock.now() + "----" + workResult.getResult()
+            System.out.println("callback worker1 success--" + System.currentTimeMillis() + "----" + workResult.getResult()
                     + "-threadName:" +Thread.currentThread().getName());
         } else {
-            System.err.println("callback worker1 failure--" + SystemClock.now() + "----"  + workResult.getResult()
+            System.err.println("callback worker1 failure--" + System.currentTimeMillis() + "----"  + workResult.getResult()
                     + "-threadName:" +Thread.currentThread().getName());
         }
     }
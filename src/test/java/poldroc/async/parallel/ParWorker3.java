@@ -2,7 +2,6 @@ package poldroc.async.parallel;
 
 
 import com.poldroc.async.callback.ICallback;
-import com.poldroc.async.timer.SystemClock;
 import com.poldroc.async.worker.IWorker;
 import com.poldroc.async.worker.WorkResult;
 import com.poldroc.async.wrapper.WorkerWrapper;
@@ -22,7 +21,7 @@ public class ParWorker3 implements IWorker<String, String>, ICallback<String, St
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
-        return "result = " + SystemClock.now() + "---param = " + object + " from 3";
+        return "result = " + System.currentTimeMillis() + "---param = " + object + " from 3";
     }
 
 
@@ -39,10 +38,10 @@ public class ParWorker3 implements IWorker<String, String>, ICallback<String, St
     @Override
     public void result(boolean success, String param, WorkResult<String> workResult) {
         if (success) {
-            System.out.println("callback worker3 success--" + SystemClock.now() + "----" + workResult.getResult()
+            System.out.println("callback worker3 success--" + System.currentTimeMillis() + "----" + workResult.getResult()
                     + "-threadName:" +Thread.currentThread().getName());
         } else {
-            System.err.println("callback worker3 failure--" + SystemClock.now() + "----"  + workResult.getResult()
+            System.err.println("callback worker3 failure--" + System.currentTimeMillis() + "----"  + workResult.getResult()
                     + "-threadName:" +Thread.currentThread().getName());
         }
     }
@@ -2,7 +2,7 @@ package poldroc.async.parallel;
 
 
 import com.poldroc.async.executor.Async;
-import com.poldroc.async.timer.SystemClock;
+import com.poldroc.async.timer.MonotonicClock;
 import com.poldroc.async.wrapper.WorkerWrapper;
 
 import java.util.concurrent.ExecutionException;
@@ -59,15 +59,15 @@ public class TestPar {
                 .param("0")
                 .build();
 
-        long now = SystemClock.now();
-        System.out.println("begin-" + now);
+        long now = MonotonicClock.INSTANCE.nanoTime() / 1_000_000;
+        System.out.println("begin-" + System.currentTimeMillis());
 
 //        Async.beginWork(1500, workerWrapper, workerWrapper1, workerWrapper2);
 //        Async.beginWork(800, workerWrapper, workerWrapper1, workerWrapper2);
         Async.beginWork(1000, workerWrapper, workerWrapper1, workerWrapper2);
 
-        System.out.println("end-" + SystemClock.now());
-        System.err.println("cost-" + (SystemClock.now() - now));
+        System.out.println("end-" + System.currentTimeMillis());
+        System.err.println("cost-" + (MonotonicClock.INSTANCE.nanoTime() / 1_000_000 - now));
         System.out.println(Async.getThreadCount());
 
         System.out.println(workerWrapper.getWorkResult());
@@ -103,13 +103,13 @@ public class TestPar {
                 .next(workerWrapper1)
                 .build();
 
-        long now = SystemClock.now();
-        System.out.println("begin-" + now);
+        long now = MonotonicClock.INSTANCE.nanoTime() / 1_000_000;
+        System.out.println("begin-" + System.currentTimeMillis());
 
         Async.beginWork(2500, workerWrapper, workerWrapper2);
 
-        System.out.println("end-" + SystemClock.now());
-        System.err.println("cost-" + (SystemClock.now() - now));
+        System.out.println("end-" + System.currentTimeMillis());
+        System.err.println("cost-" + (MonotonicClock.INSTANCE.nanoTime() / 1_000_000 - now));
 
         Async.shutDown();
     }
@@ -144,13 +144,13 @@ public class TestPar {
                 .build();
 
 
-        long now = SystemClock.now();
-        System.out.println("begin-" + now);
+        long now = MonotonicClock.INSTANCE.nanoTime() / 1_000_000;
+        System.out.println("begin-" + System.currentTimeMillis());
 
         Async.beginWork(2500, workerWrapper, workerWrapper2);
 
-        System.out.println("end-" + SystemClock.now());
-        System.err.println("cost-" + (SystemClock.now() - now));
+        System.out.println("end-" + System.currentTimeMillis());
+        System.err.println("cost-" + (MonotonicClock.INSTANCE.nanoTime() / 1_000_000 - now));
 
         Async.shutDown();
     }
@@ -185,13 +185,13 @@ public class TestPar {
                 .next(workerWrapper1)
                 .build();
 
-        long now = SystemClock.now();
-        System.out.println("begin-" + now);
+        long now = MonotonicClock.INSTANCE.nanoTime() / 1_000_000;
+        System.out.println("begin-" + System.currentTimeMillis());
 
         Async.beginWork(1500, workerWrapper, workerWrapper2);
 
-        System.out.println("end-" + SystemClock.now());
-        System.err.println("cost-" + (SystemClock.now() - now));
+        System.out.println("end-" + System.currentTimeMillis());
+        System.err.println("cost-" + (MonotonicClock.INSTANCE.nanoTime() / 1_000_000 - now));
 
         Async.shutDown();
     }
@@ -236,14 +236,14 @@ public class TestPar {
                 .build();
 
 
-        long now = SystemClock.now();
-        System.out.println("begin-" + now);
+        long now = MonotonicClock.INSTANCE.nanoTime() / 1_000_000;
+        System.out.println("begin-" + System.currentTimeMillis());
 
         Async.beginWork(3100, workerWrapper);
 //        Async.beginWork(2100, workerWrapper);
 
-        System.out.println("end-" + SystemClock.now());
-        System.err.println("cost-" + (SystemClock.now() - now));
+        System.out.println("end-" + System.currentTimeMillis());
+        System.err.println("cost-" + (MonotonicClock.INSTANCE.nanoTime() / 1_000_000 - now));
 
         System.out.println(Async.getThreadCount());
         Async.shutDown();
@@ -289,14 +289,14 @@ public class TestPar {
                 .build();
 
 
-        long now = SystemClock.now();
-        System.out.println("begin-" + now);
+        long now = MonotonicClock.INSTANCE.nanoTime() / 1_000_000;
+        System.out.println("begin-" + System.currentTimeMillis());
 
         Async.beginWork(3100, workerWrapper);
 //        Async.beginWork(2100, workerWrapper);
 
-        System.out.println("end-" + SystemClock.now());
-        System.err.println("cost-" + (SystemClock.now() - now));
+        System.out.println("end-" + System.currentTimeMillis());
+        System.err.println("cost-" + (MonotonicClock.INSTANCE.nanoTime() / 1_000_000 - now));
 
         System.out.println(Async.getThreadCount());
         Async.shutDown();
@@ -347,8 +347,8 @@ public class TestPar {
                 .next(workerWrapper1, workerWrapper2)
                 .build();
 
-        long now = SystemClock.now();
-        System.out.println("begin-" + now);
+        long now = MonotonicClock.INSTANCE.nanoTime() / 1_000_000;
+        System.out.println("begin-" + System.currentTimeMillis());
 
         //正常完毕
         Async.beginWork(4100, workerWrapper);
@@ -357,8 +357,8 @@ public class TestPar {
         //2,3会超时
 //        Async.beginWork(2900, workerWrapper);
 
-        System.out.println("end-" + SystemClock.now());
-        System.err.println("cost-" + (SystemClock.now() - now));
+        System.out.println("end-" + System.currentTimeMillis());
+        System.err.println("cost-" + (MonotonicClock.INSTANCE.nanoTime() / 1_000_000 - now));
 
         System.out.println(Async.getThreadCount());
         Async.shutDown();
@@ -409,8 +409,8 @@ public class TestPar {
                 .next(workerWrapper3)
                 .build();
 
-        long now = SystemClock.now();
-        System.out.println("begin-" + now);
+        long now = MonotonicClock.INSTANCE.nanoTime() / 1_000_000;
+        System.out.println("begin-" + System.currentTimeMillis());
 
         //正常完毕
         Async.beginWork(4100, workerWrapper);
@@ -419,8 +419,8 @@ public class TestPar {
         //2,3会超时
 //        Async.beginWork(2900, workerWrapper);
 
-        System.out.println("end-" + SystemClock.now());
-        System.err.println("cost-" + (SystemClock.now() - now));
+        System.out.println("end-" + System.currentTimeMillis());
+        System.err.println("cost-" + (MonotonicClock.INSTANCE.nanoTime() / 1_000_000 - now));
 
         System.out.println(Async.getThreadCount());
         Async.shutDown();
@@ -473,14 +473,14 @@ public class TestPar {
                 .next(workerWrapper1, workerWrapper2)
                 .build();
 
-        long now = SystemClock.now();
-        System.out.println("begin-" + now);
+        long now = MonotonicClock.INSTANCE.nanoTime() / 1_000_000;
+        System.out.println("begin-" + System.currentTimeMillis());
 
         //正常完毕
         Async.beginWork(4100, workerWrapper);
 
-        System.out.println("end-" + SystemClock.now());
-        System.err.println("cost-" + (SystemClock.now() - now));
+        System.out.println("end-" + System.currentTimeMillis());
+        System.err.println("cost-" + (MonotonicClock.INSTANCE.nanoTime() / 1_000_000 - now));
 
         System.out.println(Async.getThreadCount());
         Async.shutDown();
@@ -537,14 +537,14 @@ public class TestPar {
 
 
 
-        long now = SystemClock.now();
-        System.out.println("begin-" + now);
+        long now = MonotonicClock.INSTANCE.nanoTime() / 1_000_000;
+        System.out.println("begin-" + System.currentTimeMillis());
 
         //正常完毕
         Async.beginWork(4100, workerWrapper);
 
-        System.out.println("end-" + SystemClock.now());
-        System.err.println("cost-" + (SystemClock.now() - now));
+        System.out.println("end-" + System.currentTimeMillis());
+        System.err.println("cost-" + (MonotonicClock.INSTANCE.nanoTime() / 1_000_000 - now));
 
         System.out.println(Async.getThreadCount());
         Async.shutDown();
@@ -600,14 +600,14 @@ public class TestPar {
                 .build();
 
 
-        long now = SystemClock.now();
-        System.out.println("begin-" + now);
+        long now = MonotonicClock.INSTANCE.nanoTime() / 1_000_000;
+        System.out.println("begin-" + System.currentTimeMillis());
 
         //正常完毕
         Async.beginWork(4100, workerWrapper0);
 
-        System.out.println("end-" + SystemClock.now());
-        System.err.println("cost-" + (SystemClock.now() - now));
+        System.out.println("end-" + System.currentTimeMillis());
+        System.err.println("cost-" + (MonotonicClock.INSTANCE.nanoTime() / 1_000_000 - now));
 
         System.out.println(Async.getThreadCount());
         Async.shutDown();
@@ -699,14 +699,14 @@ public class TestPar {
                 .next(workerWrapper1, workerWrapper2)
                 .build();
 
-        long now = SystemClock.now();
-        System.out.println("begin-" + now);
+        long now = MonotonicClock.INSTANCE.nanoTime() / 1_000_000;
+        System.out.println("begin-" + System.currentTimeMillis());
 
         //正常完毕
         Async.beginWork(4100, workerWrapper00, workerWrapper0);
 
-        System.out.println("end-" + SystemClock.now());
-        System.err.println("cost-" + (SystemClock.now() - now));
+        System.out.println("end-" + System.currentTimeMillis());
+        System.err.println("cost-" + (MonotonicClock.INSTANCE.nanoTime() / 1_000_000 - now));
 
         System.out.println(Async.getThreadCount());
         Async.shutDown();
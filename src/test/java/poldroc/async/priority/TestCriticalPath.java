@@ -0,0 +1,88 @@
+package poldroc.async.priority;
+
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.executor.EdfExecutor;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 关键路径优先调度
+ * <pre>
+ * root --- leaf0..leaf11 (10ms)
+ *      \-- c0 (15ms) --- c1 (15ms) --- c2 (15ms) --- c3 (15ms)
+ *            \-- side0     \-- side1     \-- side2     (5ms)
+ * </pre>
+ * 两个线程。默认顺序下ci在当前线程执行排在后面的side，c(i+1)被提交到队尾，排在所有leaf之后；
+ * 关键路径优先时c(i+1)在当前线程执行，链路不再等待，总耗时接近 总工作量/线程数。
+ * 最后重新构建一次图：root和ci指定了id，直接用上之前学到的耗时，c0的路径估计接近4*15ms；
+ * 没有指定id的side和leaf按worker类学到的平均耗时估计
+ */
+public class TestCriticalPath {
+    public static void main(String[] args) throws Exception {
+        run("fifo", Executors.newFixedThreadPool(2));
+        run("edf", new EdfExecutor(2));
+    }
+
+    private static void run(String name, ExecutorService executorService) throws Exception {
+        WorkerWrapper<String, String> root = buildGraph();
+        for (boolean prioritized : new boolean[]{false, true}) {
+            Async.setCriticalPathScheduling(prioritized);
+            // 前几次执行用来学习worker耗时
+            for (int i = 0; i < 20; i++) {
+                Async.beginWork(5000, executorService, root);
+            }
+            long total = 0;
+            int runs = 5;
+            for (int i = 0; i < runs; i++) {
+                long now = System.nanoTime();
+                Async.beginWork(5000, executorService, root);
+                total += System.nanoTime() - now;
+            }
+            System.out.printf("%s, critical path %s: %.1fms%n", name, prioritized, total / runs / 1e6);
+        }
+        // 指定了id的wrapper在重新构建的图之间共用学到的耗时，第一次执行就有路径估计，不再只按跳数
+        WorkerWrapper<String, String> rebuilt = buildGraph();
+        Async.beginWork(5000, executorService, rebuilt);
+        System.out.printf("%s, rebuilt graph estimated path: %.1fms%n", name, rebuilt.getRemainingPathNanos() / 1e6);
+        Async.setCriticalPathScheduling(false);
+        executorService.shutdown();
+    }
+
+    private static WorkerWrapper<String, String> buildGraph() {
+        WorkerWrapper<String, String> next = null;
+        for (int i = 3; i >= 0; i--) {
+            WorkerWrapper.Builder<String, String> builder = new WorkerWrapper.Builder<String, String>()
+                    .worker(sleeper(15))
+                    .param("c" + i)
+                    .id("c" + i);
+            if (next != null) {
+                builder.next(next);
+                builder.next(new WorkerWrapper.Builder<String, String>().worker(sleeper(5)).param("side" + i).build());
+            }
+            next = builder.build();
+        }
+        WorkerWrapper.Builder<String, String> rootBuilder = new WorkerWrapper.Builder<String, String>()
+                .worker(sleeper(0))
+                .param("root")
+                .id("root")
+                .next(next);
+        for (int i = 0; i < 12; i++) {
+            rootBuilder.next(new WorkerWrapper.Builder<String, String>().worker(sleeper(10)).param("leaf" + i).build());
+        }
+        return rootBuilder.build();
+    }
+
+    private static com.poldroc.async.worker.IWorker<String, String> sleeper(long sleepTime) {
+        return (param, allWrappers) -> {
+            try {
+                Thread.sleep(sleepTime);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return param;
+        };
+    }
+}
@@ -0,0 +1,89 @@
+package poldroc.async.pull;
+
+
+import com.poldroc.async.callback.ICallback;
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.worker.IWorker;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 只计算需要的输出
+ * <pre>
+ *        --- profile ------------
+ * user                           --- page
+ *        --- orders --- recommend
+ *                   \-- invoice
+ * </pre>
+ * 整张图所有接口共用，详情接口只要profile，推荐接口只要recommend，只有它们的传递依赖会执行；
+ * 没有执行的wrapper也会通知CompletionListener
+ */
+public class TestPull {
+    public static void main(String[] args) throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        Set<String> ran = new ConcurrentSkipListSet<>();
+
+        WorkerWrapper<String, String> page = build("page", ran);
+        WorkerWrapper<String, String> invoice = build("invoice", ran);
+        WorkerWrapper<String, String> recommend = new WorkerWrapper.Builder<String, String>()
+                .id("recommend").worker(worker("recommend", ran)).callback(callback("recommend")).param("recommend")
+                .next(page).build();
+        WorkerWrapper<String, String> orders = new WorkerWrapper.Builder<String, String>()
+                .id("orders").worker(worker("orders", ran)).callback(callback("orders")).param("orders")
+                .next(recommend, invoice).build();
+        WorkerWrapper<String, String> profile = new WorkerWrapper.Builder<String, String>()
+                .id("profile").worker(worker("profile", ran)).callback(callback("profile")).param("profile")
+                .next(page).build();
+        WorkerWrapper<String, String> user = new WorkerWrapper.Builder<String, String>()
+                .id("user").worker(worker("user", ran)).callback(callback("user")).param("user")
+                .next(profile, orders).build();
+        List<WorkerWrapper> roots = Collections.singletonList(user);
+
+        Async.beginWorkFor(1000, executorService, roots, profile);
+        System.out.println("profile endpoint ran " + ran + ", profile = " + profile.getWorkResult().getResult());
+
+        ran.clear();
+        Async.beginWorkFor(1000, executorService, roots, recommend);
+        System.out.println("recommend endpoint ran " + ran + ", recommend = " + recommend.getWorkResult().getResult());
+
+        // 被跳过的wrapper也通知listener，每个wrapper正好一次
+        ran.clear();
+        List<String> notified = Collections.synchronizedList(new ArrayList<>());
+        Async.beginWorkFor(1000, executorService, roots, wrapper -> notified.add(wrapper.getId()), recommend);
+        Collections.sort(notified);
+        System.out.println("recommend endpoint ran " + ran + ", notified " + notified);
+
+        ran.clear();
+        Async.beginWork(1000, executorService, roots);
+        System.out.println("full graph ran " + new TreeSet<>(ran));
+        executorService.shutdown();
+    }
+
+    private static WorkerWrapper<String, String> build(String id, Set<String> ran) {
+        return new WorkerWrapper.Builder<String, String>()
+                .id(id).worker(worker(id, ran)).callback(callback(id)).param(id).build();
+    }
+
+    private static IWorker<String, String> worker(String id, Set<String> ran) {
+        return (param, allWrappers) -> {
+            ran.add(id);
+            return param + "-result";
+        };
+    }
+
+    private static ICallback<String, String> callback(String id) {
+        return (success, param, workResult) -> {
+            if (!success) {
+                System.out.println("unexpected failure callback for " + id);
+            }
+        };
+    }
+}
@@ -0,0 +1,101 @@
+package poldroc.async.quorum;
+
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.metrics.HistogramMetricsCollector;
+import com.poldroc.async.metrics.MetricsCollector;
+import com.poldroc.async.metrics.WorkerStats;
+import com.poldroc.async.worker.IWorker;
+import com.poldroc.async.wrapper.CancellationToken;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * K-of-N和first-success汇合
+ * <p>
+ * 三个副本 100ms、200ms、1000ms，2-of-3应该在200ms左右执行汇合节点，1000ms的副本被取消，
+ * 结果是CancelledException，metrics里记为cancelled而不是skipped；
+ * first-success：一个副本立即失败，另外两个150ms、500ms，应该在150ms左右拿到结果
+ */
+public class TestQuorum {
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        HistogramMetricsCollector metrics = new HistogramMetricsCollector(WorkerWrapper::getId);
+        Async.setMetricsCollector(metrics);
+        testQuorum();
+        WorkerStats r2 = metrics.getWorkerStats("r2");
+        System.out.println("r2 cancelled " + r2.getCancelledCount() + ", skipped " + r2.getSkippedCount());
+        testFirstSuccess();
+        Async.setMetricsCollector(MetricsCollector.NOOP);
+        Async.shutDown();
+    }
+
+    private static void testQuorum() throws ExecutionException, InterruptedException {
+        WorkerWrapper<String, String> r0 = replica("r0", 100);
+        WorkerWrapper<String, String> r1 = replica("r1", 200);
+        WorkerWrapper<String, String> r2 = replica("r2", 1000);
+        WorkerWrapper<String, String> join = joinWrapper(new WorkerWrapper.Builder<String, String>().dependQuorum(2, r0, r1, r2));
+
+        long now = System.currentTimeMillis();
+        boolean success = Async.beginWork(1500, r0, r1, r2);
+        System.out.println("quorum success " + success + ", cost " + (System.currentTimeMillis() - now));
+        System.out.println(join.getWorkResult());
+        System.out.println("r2 " + r2.getWorkResult());
+    }
+
+    private static void testFirstSuccess() throws ExecutionException, InterruptedException {
+        WorkerWrapper<String, String> r0 = new WorkerWrapper.Builder<String, String>()
+                .worker((param, allWrappers) -> {
+                    throw new IllegalStateException("r0 is down");
+                })
+                .param("r0")
+                .id("r0")
+                .build();
+        WorkerWrapper<String, String> r1 = replica("r1", 150);
+        WorkerWrapper<String, String> r2 = replica("r2", 500);
+        WorkerWrapper<String, String> join = joinWrapper(new WorkerWrapper.Builder<String, String>().dependFirstSuccess(r0, r1, r2));
+
+        long now = System.currentTimeMillis();
+        boolean success = Async.beginWork(1500, r0, r1, r2);
+        System.out.println("first-success success " + success + ", cost " + (System.currentTimeMillis() - now));
+        System.out.println(join.getWorkResult());
+        System.out.println("r2 " + r2.getWorkResult());
+    }
+
+    private static WorkerWrapper<String, String> replica(String id, long sleepTime) {
+        IWorker<String, String> worker = (param, allWrappers) -> {
+            CancellationToken token = CancellationToken.current();
+            long deadline = System.currentTimeMillis() + sleepTime;
+            while (System.currentTimeMillis() < deadline) {
+                if (token.isCancelled()) {
+                    System.out.println(param + " cancelled");
+                    return null;
+                }
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            return param + " response";
+        };
+        return new WorkerWrapper.Builder<String, String>().worker(worker).param(id).id(id).build();
+    }
+
+    private static WorkerWrapper<String, String> joinWrapper(WorkerWrapper.Builder<String, String> builder) {
+        return builder
+                .worker((param, allWrappers) -> {
+                    StringBuilder sb = new StringBuilder("joined:");
+                    for (String id : new String[]{"r0", "r1", "r2"}) {
+                        WorkerWrapper<?, ?> wrapper = allWrappers.get(id);
+                        if (wrapper != null && wrapper.getWorkResult().getResult() != null) {
+                            sb.append(' ').append(wrapper.getWorkResult().getResult());
+                        }
+                    }
+                    return sb.toString();
+                })
+                .id("join")
+                .build();
+    }
+}
@@ -0,0 +1,121 @@
+package poldroc.async.reduce;
+
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.worker.ReduceWorker;
+import com.poldroc.async.worker.ResultState;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 增量归并
+ * <pre>
+ * shard0(50ms)  ---
+ * shard1(100ms) ---
+ * shard2(150ms) --- sum
+ * shard3(300ms) ---
+ * </pre>
+ * 每个分片结束时立即折叠进累加值，sum在300ms左右结束，结果为0+1+2+3
+ * <p>
+ * 第二次用releaseUpstreamResults：折叠后分片的结果被丢掉，声明了output的a保留结果
+ */
+public class TestReduce {
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        long begin = System.currentTimeMillis();
+        ReduceWorker<long[], Long> sum = new ReduceWorker<long[], Long>() {
+            @Override
+            public long[] initial() {
+                return new long[1];
+            }
+
+            @Override
+            public long[] accumulate(long[] accumulator, WorkerWrapper<?, ?> upstream) {
+                if (upstream.getWorkResult().getResultState() == ResultState.SUCCESS) {
+                    accumulator[0] += (Integer) upstream.getWorkResult().getResult();
+                }
+                System.out.println((System.currentTimeMillis() - begin) + "ms fold " + upstream.getId());
+                return accumulator;
+            }
+
+            @Override
+            public Long action(long[] accumulator, Map<String, WorkerWrapper> allWrappers) {
+                System.out.println((System.currentTimeMillis() - begin) + "ms action");
+                return accumulator[0];
+            }
+        };
+
+        WorkerWrapper<Integer, Integer>[] shards = new WorkerWrapper[4];
+        WorkerWrapper.Builder<long[], Long> builder = new WorkerWrapper.Builder<long[], Long>().worker(sum);
+        for (int i = 0; i < shards.length; i++) {
+            long sleep = i == 3 ? 300 : 50 * (i + 1);
+            shards[i] = new WorkerWrapper.Builder<Integer, Integer>()
+                    .worker((param, allWrappers) -> {
+                        try {
+                            Thread.sleep(sleep);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return param;
+                    })
+                    .param(i)
+                    .id("shard" + i)
+                    .build();
+            builder.depend(shards[i]);
+        }
+        WorkerWrapper<long[], Long> reduce = builder.build();
+
+        System.out.println("success " + Async.beginWork(1000, shards));
+        System.out.println(reduce.getWorkResult());
+
+        testRelease();
+        Async.shutDown();
+    }
+
+    private static void testRelease() throws ExecutionException, InterruptedException {
+        ReduceWorker<long[], Long> sum = new ReduceWorker<long[], Long>() {
+            @Override
+            public long[] initial() {
+                return new long[1];
+            }
+
+            @Override
+            public long[] accumulate(long[] accumulator, WorkerWrapper<?, ?> upstream) {
+                accumulator[0] += (Integer) upstream.getWorkResult().getResult();
+                return accumulator;
+            }
+
+            @Override
+            public Long action(long[] accumulator, Map<String, WorkerWrapper> allWrappers) {
+                return accumulator[0];
+            }
+
+            @Override
+            public boolean releaseUpstreamResults() {
+                return true;
+            }
+        };
+        WorkerWrapper<Integer, Integer> a = new WorkerWrapper.Builder<Integer, Integer>()
+                .worker((param, allWrappers) -> param)
+                .param(1)
+                .id("a")
+                .output()
+                .build();
+        WorkerWrapper<Integer, Integer> b = new WorkerWrapper.Builder<Integer, Integer>()
+                .worker((param, allWrappers) -> param)
+                .param(2)
+                .id("b")
+                .build();
+        WorkerWrapper<long[], Long> reduce = new WorkerWrapper.Builder<long[], Long>()
+                .worker(sum)
+                .depend(a, b)
+                .build();
+
+        System.out.println("success " + Async.beginWork(1000, a, b));
+        // 期望 sum 3, a 1, b null
+        System.out.println("sum " + reduce.getWorkResult().getResult()
+                + ", a " + a.getWorkResult().getResult()
+                + ", b " + b.getWorkResult().getResult());
+    }
+}
@@ -0,0 +1,60 @@
+package poldroc.async.retention;
+
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 执行结束后调用线程不再持有这次执行的图
+ * <pre>
+ * load (16MB) ---- size
+ * </pre>
+ * 每次请求新建一张图，beginWork返回、调用方不再引用图以后，wrapper和结果都应该能被回收；
+ * 调用方保留的模板仍然复用编译好的执行图
+ */
+public class TestRetention {
+    public static void main(String[] args) throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+
+        WeakReference<Object> result = runOnce(executorService);
+        System.out.println("per-request graph collected: " + collected(result));
+
+        WorkerWrapper<Integer, byte[]> template = graph();
+        Async.beginWork(1000, executorService, template);
+        Async.beginWork(1000, executorService, template);
+        System.out.println("template rerun: " + template.getWorkResult().getResultState()
+                + ", result kept while referenced: " + (template.getWorkResult().getResult() != null));
+        executorService.shutdown();
+    }
+
+    private static WeakReference<Object> runOnce(ExecutorService executorService) throws Exception {
+        WorkerWrapper<Integer, byte[]> load = graph();
+        Async.beginWork(1000, executorService, load);
+        return new WeakReference<>(load.getWorkResult().getResult());
+    }
+
+    private static WorkerWrapper<Integer, byte[]> graph() {
+        WorkerWrapper<Void, Integer> size = new WorkerWrapper.Builder<Void, Integer>()
+                .id("size")
+                .worker((param, allWrappers) -> ((byte[]) allWrappers.get("load").getWorkResult().getResult()).length)
+                .build();
+        return new WorkerWrapper.Builder<Integer, byte[]>()
+                .id("load")
+                .worker((bytes, allWrappers) -> new byte[bytes])
+                .param(16 << 20)
+                .next(size)
+                .build();
+    }
+
+    private static boolean collected(WeakReference<Object> reference) throws InterruptedException {
+        for (int i = 0; i < 20 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return reference.get() == null;
+    }
+}
@@ -0,0 +1,51 @@
+package poldroc.async.scatter;
+
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.worker.ScatterGatherWorker;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 拆分/计算/合并
+ * <p>
+ * 对100万个元素打分求和，多次执行后打印测得的单个元素耗时和自动调整后的chunk大小，结果与单线程计算一致
+ */
+public class TestScatterGather {
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        List<Integer> input = new ArrayList<>();
+        for (int i = 0; i < 1_000_000; i++) {
+            input.add(i);
+        }
+
+        ScatterGatherWorker<Integer, Double> worker = ScatterGatherWorker.<Integer, Double>builder(TestScatterGather::score, Double::sum)
+                .build();
+        WorkerWrapper<List<? extends Integer>, Double> wrapper = new WorkerWrapper.Builder<List<? extends Integer>, Double>()
+                .worker(worker)
+                .param(input)
+                .build();
+
+        for (int i = 0; i < 5; i++) {
+            long now = System.nanoTime();
+            Async.beginWork(10000, wrapper);
+            System.out.printf("run %d: %.1fms, %.1fns/element, next chunk %d%n", i, (System.nanoTime() - now) / 1e6,
+                    worker.getNanosPerElement(), worker.chunkSize(input.size()));
+        }
+        long now = System.nanoTime();
+        double expected = score(input);
+        System.out.printf("parallel %.6e, sequential %.6e in %.1fms%n", wrapper.getWorkResult().getResult(), expected,
+                (System.nanoTime() - now) / 1e6);
+        Async.shutDown();
+    }
+
+    private static double score(List<? extends Integer> chunk) {
+        double sum = 0;
+        for (Integer value : chunk) {
+            sum += Math.sqrt(value) * Math.log1p(value);
+        }
+        return sum;
+    }
+}
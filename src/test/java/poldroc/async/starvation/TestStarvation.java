@@ -0,0 +1,114 @@
+package poldroc.async.starvation;
+
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 有界线程池里嵌套beginWork导致的线程池饿死
+ * <pre>
+ *             ---- order-1 ----              每个order在worker里用同一个线程池嵌套执行：
+ * start ---- |      ...        | ---- end        item-1..4 (sleep 5ms) ---- sum
+ *             ---- order-8 ----
+ * </pre>
+ * 4个线程的线程池，4个order占满线程后在嵌套调用里等待，嵌套图的任务排在队列里轮不到，只能等到超时；
+ * 开启helpWhileWaiting后，等待的线程自己执行嵌套图的任务。最后连续压测，每次都应该在超时之前完成
+ */
+public class TestStarvation {
+
+    private static final int THREADS = 4;
+
+    public static void main(String[] args) throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+
+        Async.setHelpWhileWaiting(false);
+        run("wait", executorService);
+        System.out.println("starvation detected: " + Async.getStarvationCount());
+
+        Async.setHelpWhileWaiting(true);
+        long starvation = Async.getStarvationCount();
+        run("help while waiting", executorService);
+
+        int failed = 0;
+        long begin = System.nanoTime();
+        for (int i = 0; i < 200; i++) {
+            if (!run(null, executorService)) {
+                failed++;
+            }
+        }
+        System.out.println("stress: 200 runs, failed " + failed + ", avg ms "
+                + String.format("%.1f", (System.nanoTime() - begin) / 1e6 / 200)
+                + ", starvation detected " + (Async.getStarvationCount() - starvation));
+        Async.setHelpWhileWaiting(false);
+        executorService.shutdown();
+    }
+
+    private static boolean run(String name, ExecutorService executorService) throws Exception {
+        AtomicInteger nestedFailures = new AtomicInteger();
+        WorkerWrapper<Void, String> end = new WorkerWrapper.Builder<Void, String>()
+                .id("end")
+                .worker((param, allWrappers) -> "end")
+                .build();
+        List<WorkerWrapper<?, ?>> orders = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            orders.add(new WorkerWrapper.Builder<Void, Integer>()
+                    .id("order-" + i)
+                    .worker((param, allWrappers) -> nested(executorService, nestedFailures))
+                    .next(end)
+                    .build());
+        }
+        WorkerWrapper<Void, String> start = new WorkerWrapper.Builder<Void, String>()
+                .id("start")
+                .worker((param, allWrappers) -> "start")
+                .next(orders.toArray(new WorkerWrapper[0]))
+                .build();
+        long begin = System.nanoTime();
+        boolean success = Async.beginWork(3000, executorService, start) && nestedFailures.get() == 0;
+        if (name != null) {
+            System.out.println(name + ": success " + success + ", nested timeouts " + nestedFailures.get()
+                    + ", ms " + (System.nanoTime() - begin) / 1_000_000);
+        }
+        return success;
+    }
+
+    private static Integer nested(ExecutorService executorService, AtomicInteger nestedFailures) {
+        WorkerWrapper<Void, Integer> sum = new WorkerWrapper.Builder<Void, Integer>()
+                .id("sum")
+                .worker((param, allWrappers) -> 4)
+                .build();
+        WorkerWrapper.Builder<Void, String> builder = new WorkerWrapper.Builder<Void, String>()
+                .id("items")
+                .worker((param, allWrappers) -> "items");
+        for (int i = 1; i <= 4; i++) {
+            builder.next(new WorkerWrapper.Builder<Void, Integer>()
+                    .id("item-" + i)
+                    .worker((param, allWrappers) -> {
+                        sleep(5);
+                        return 1;
+                    })
+                    .next(sum)
+                    .build());
+        }
+        try {
+            if (!Async.beginWork(300, executorService, builder.build())) {
+                nestedFailures.incrementAndGet();
+            }
+        } catch (Exception e) {
+            nestedFailures.incrementAndGet();
+        }
+        return sum.getWorkResult().getResult();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
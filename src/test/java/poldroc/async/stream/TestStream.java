@@ -0,0 +1,64 @@
+package poldroc.async.stream;
+
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.executor.ResultStream;
+import com.poldroc.async.wrapper.WorkerWrapper;
+import poldroc.async.parallel.ParWorker;
+import poldroc.async.parallel.ParWorker1;
+import poldroc.async.parallel.ParWorker2;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 按完成顺序流式获取结果
+ * <p>
+ * 0(300ms)---1(100ms)
+ * 2(50ms)
+ * 3(800ms，超时)
+ * 应该依次拿到2、0、1，500ms时总超时，3以TIMEOUT出现
+ */
+public class TestStream {
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        ParWorker w = new ParWorker();
+        w.setSleepTime(300);
+        ParWorker1 w1 = new ParWorker1();
+        w1.setSleepTime(100);
+        ParWorker2 w2 = new ParWorker2();
+        w2.setSleepTime(50);
+        ParWorker w3 = new ParWorker();
+        w3.setSleepTime(800);
+
+        WorkerWrapper<String, String> workerWrapper1 = new WorkerWrapper.Builder<String, String>()
+                .worker(w1)
+                .param("1")
+                .id("1")
+                .build();
+        WorkerWrapper<String, String> workerWrapper = new WorkerWrapper.Builder<String, String>()
+                .worker(w)
+                .param("0")
+                .id("0")
+                .next(workerWrapper1)
+                .build();
+        WorkerWrapper<String, String> workerWrapper2 = new WorkerWrapper.Builder<String, String>()
+                .worker(w2)
+                .param("2")
+                .id("2")
+                .build();
+        WorkerWrapper<String, String> workerWrapper3 = new WorkerWrapper.Builder<String, String>()
+                .worker(w3)
+                .param("3")
+                .id("3")
+                .build();
+
+        long now = System.currentTimeMillis();
+        ResultStream stream = Async.beginWorkStream(500, workerWrapper, workerWrapper2, workerWrapper3);
+        WorkerWrapper<?, ?> wrapper;
+        while ((wrapper = stream.take()) != null) {
+            System.out.println((System.currentTimeMillis() - now) + "ms  " + wrapper.getId() + "  "
+                    + wrapper.getWorkResult().getResultState());
+        }
+        System.out.println("success " + stream.await() + ", cost " + (System.currentTimeMillis() - now));
+        Async.shutDown();
+    }
+}
@@ -0,0 +1,96 @@
+package poldroc.async.timer;
+
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.timer.CachedClock;
+import com.poldroc.async.timer.DeadlineClock;
+import com.poldroc.async.timer.MonotonicClock;
+import com.poldroc.async.wrapper.CancellationToken;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CachedClock的读数滞后和基于它的剩余时间计算
+ * <p>
+ * 周期10ms：执行期间读数最多落后一个周期（加上调度抖动），并且不会倒退；没有执行时直接读nanoTime。
+ * 设为全局时钟后，worker看到的剩余时间和超时判断与MonotonicClock一致，误差在一个周期以内
+ */
+public class TestCachedClock {
+
+    private static final long PERIOD_MILLIS = 10;
+
+    public static void main(String[] args) throws Exception {
+        CachedClock clock = new CachedClock(PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+
+        long idleLag = System.nanoTime() - clock.nanoTime();
+        check("idle reads nanoTime", idleLag <= TimeUnit.MILLISECONDS.toNanos(1));
+
+        clock.executionStarted();
+        long maxLag = 0;
+        long previous = Long.MIN_VALUE;
+        boolean monotonic = true;
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+        while (System.nanoTime() < end) {
+            long cached = clock.nanoTime();
+            maxLag = Math.max(maxLag, System.nanoTime() - cached);
+            monotonic &= cached >= previous;
+            previous = cached;
+        }
+        System.out.println("max lag ms: " + String.format("%.2f", maxLag / 1e6));
+        check("lag within period + jitter", maxLag <= TimeUnit.MILLISECONDS.toNanos(PERIOD_MILLIS * 3));
+        check("monotonic while ticking", monotonic);
+        clock.executionFinished();
+
+        Thread.sleep(PERIOD_MILLIS * 3);
+        check("idle again reads nanoTime", System.nanoTime() - clock.nanoTime() <= TimeUnit.MILLISECONDS.toNanos(1));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        DeadlineClock original = Async.getClock();
+        Async.setClock(clock);
+        try {
+            long[] remaining = new long[1];
+            WorkerWrapper<Void, String> fast = sleeper("fast", 30, remaining);
+            Async.beginWork(200, executorService, fast);
+            System.out.println("remaining seen by worker ms: " + remaining[0]);
+            check("fast finishes", fast.getWorkResult().getResultState().name().equals("SUCCESS"));
+            check("remaining within a period of 200ms", remaining[0] <= 200 && remaining[0] >= 200 - PERIOD_MILLIS * 3);
+
+            WorkerWrapper<Void, String> slow = sleeper("slow", 30, remaining);
+            WorkerWrapper<Void, String> after = new WorkerWrapper.Builder<Void, String>()
+                    .id("after")
+                    .worker((param, allWrappers) -> "after")
+                    .depend(slow)
+                    .build();
+            Async.beginWork(200, executorService, slow);
+            check("chain within deadline", after.getWorkResult().getResultState().name().equals("SUCCESS"));
+
+            WorkerWrapper<Void, String> late = sleeper("late", 100, remaining);
+            boolean success = Async.beginWork(40, executorService, late);
+            check("late times out", !success && late.getWorkResult().getResultState().name().equals("TIMEOUT"));
+        } finally {
+            Async.setClock(original == null ? MonotonicClock.INSTANCE : original);
+            executorService.shutdown();
+        }
+    }
+
+    private static WorkerWrapper<Void, String> sleeper(String id, long millis, long[] remaining) {
+        return new WorkerWrapper.Builder<Void, String>()
+                .id(id)
+                .worker((param, allWrappers) -> {
+                    remaining[0] = CancellationToken.current().remainingMillis();
+                    try {
+                        Thread.sleep(millis);
+                    } catch (InterruptedException ignored) {
+                    }
+                    return id;
+                })
+                .build();
+    }
+
+    private static void check(String name, boolean ok) {
+        System.out.println((ok ? "ok   " : "FAIL ") + name);
+    }
+}
@@ -0,0 +1,76 @@
+package poldroc.async.trace;
+
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.trace.CriticalPathStats;
+import com.poldroc.async.trace.ExecutionTracer;
+import com.poldroc.async.wrapper.WorkerWrapper;
+import poldroc.async.parallel.ParWorker;
+import poldroc.async.parallel.ParWorker1;
+import poldroc.async.parallel.ParWorker2;
+import poldroc.async.parallel.ParWorker3;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * trace测试，导出的json可以在 chrome://tracing 或 https://ui.perfetto.dev 中打开
+ * <p>
+ * 两个线程的线程池，0执行完后1、2、3争抢线程，从时间线上能看到排队
+ * 0---1
+ *  \--2
+ *  \--3
+ */
+public class TestTrace {
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        Path dir = Paths.get(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"));
+        CriticalPathStats stats = new CriticalPathStats();
+        Async.setTracer(new ExecutionTracer(1.0, trace -> {
+            System.out.println(trace.getCriticalPath());
+            Path file = dir.resolve("roc-async-trace-" + trace.getExecutionId() + ".json");
+            try {
+                Files.write(file, trace.toChromeTraceJson().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            System.out.println("trace written to " + file);
+        }).criticalPathStats(stats));
+
+        ParWorker w = new ParWorker();
+        w.setSleepTime(100);
+        ParWorker1 w1 = new ParWorker1();
+        w1.setSleepTime(200);
+        ParWorker2 w2 = new ParWorker2();
+        w2.setSleepTime(300);
+        ParWorker3 w3 = new ParWorker3();
+        w3.setSleepTime(100);
+
+        WorkerWrapper<String, String> workerWrapper1 = new WorkerWrapper.Builder<String, String>()
+                .worker(w1).callback(w1).param("1").id("w1").build();
+        WorkerWrapper<String, String> workerWrapper2 = new WorkerWrapper.Builder<String, String>()
+                .worker(w2).callback(w2).param("2").id("w2").build();
+        WorkerWrapper<String, String> workerWrapper3 = new WorkerWrapper.Builder<String, String>()
+                .worker(w3).callback(w3).param("3").id("w3").build();
+        WorkerWrapper<String, String> workerWrapper = new WorkerWrapper.Builder<String, String>()
+                .worker(w).callback(w).param("0").id("w0")
+                .next(workerWrapper1, workerWrapper2, workerWrapper3)
+                .build();
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        for (int i = 0; i < 3; i++) {
+            Async.beginWork(2000, pool, workerWrapper);
+        }
+        // w2在排队，关键路径是 w0 -> w2，排队时间归到w2
+        stats.getShapeStats().forEach(System.out::println);
+        Async.setTracer(null);
+        Async.shutDown(pool);
+        Async.shutDown();
+    }
+}
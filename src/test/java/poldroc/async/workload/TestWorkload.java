@@ -0,0 +1,139 @@
+package poldroc.async.workload;
+
+
+import com.poldroc.async.executor.Async;
+import com.poldroc.async.executor.WorkloadClassifier;
+import com.poldroc.async.executor.WorkloadRoutingExecutor;
+import com.poldroc.async.worker.IWorker;
+import com.poldroc.async.worker.Workload;
+import com.poldroc.async.wrapper.WorkerWrapper;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 计算型和阻塞型worker自动分流
+ * <pre>
+ *        ---- query-1..6 (sleep 20ms) ----
+ * start |                                 |---- end (spin 2ms，指定为CPU型)
+ *        ---- score-1..4 (spin 5ms)   ----
+ * </pre>
+ * 按核数固定大小的线程池里，query睡眠时占着线程，score只能排队；
+ * 用WorkloadRoutingExecutor时，几次执行后query被识别为阻塞型，score为CPU型，query不再挡住score。
+ * 最后检查每个worker实际执行的线程：CPU型的next不会在阻塞线程池里直接执行，反过来也一样
+ */
+public class TestWorkload {
+
+    private static final IWorker<Void, String> QUERY = (param, allWrappers) -> {
+        sleep(20);
+        return "rows";
+    };
+
+    private static final IWorker<Void, String> SCORE = (param, allWrappers) -> {
+        spin(5);
+        return "score";
+    };
+
+    public static void main(String[] args) throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        ExecutorService fixed = Executors.newFixedThreadPool(cores);
+        WorkloadRoutingExecutor routing = new WorkloadRoutingExecutor();
+
+        for (int i = 0; i < 10; i++) {
+            Async.beginWork(2000, routing, graph());
+        }
+        System.out.println("query: " + WorkloadClassifier.classify(QUERY)
+                + " cpu ratio " + String.format("%.2f", WorkloadClassifier.getCpuRatio(QUERY)));
+        System.out.println("score: " + WorkloadClassifier.classify(SCORE)
+                + " cpu ratio " + String.format("%.2f", WorkloadClassifier.getCpuRatio(SCORE)));
+
+        System.out.println("fixed(" + cores + ") avg ms: " + measure(fixed));
+        long cpuTasks = routing.getCpuTaskCount();
+        long blockingTasks = routing.getBlockingTaskCount();
+        System.out.println("routing avg ms: " + measure(routing));
+        System.out.println("routed to cpu pool: " + (routing.getCpuTaskCount() - cpuTasks)
+                + ", to blocking pool: " + (routing.getBlockingTaskCount() - blockingTasks));
+        fixed.shutdown();
+        routing.shutdown();
+
+        testPlacement();
+    }
+
+    /**
+     * compute(CPU) --- fetch(BLOCKING) --- rank(CPU)
+     */
+    private static void testPlacement() throws Exception {
+        WorkloadRoutingExecutor routing = new WorkloadRoutingExecutor(2);
+        Map<String, String> threads = new ConcurrentHashMap<>();
+        WorkerWrapper<Void, String> rank = placed("rank", Workload.CPU, threads).build();
+        WorkerWrapper<Void, String> fetch = placed("fetch", Workload.BLOCKING, threads).next(rank).build();
+        WorkerWrapper<Void, String> compute = placed("compute", Workload.CPU, threads).next(fetch).build();
+        Async.beginWork(2000, routing, compute);
+        for (String id : new String[]{"compute", "fetch", "rank"}) {
+            String thread = threads.get(id);
+            String expected = id.equals("fetch") ? "roc-async-blocking-" : "roc-async-cpu-";
+            System.out.println(id + " ran on " + thread + (thread.startsWith(expected) ? " ok" : " WRONG POOL"));
+        }
+        routing.shutdown();
+    }
+
+    private static WorkerWrapper.Builder<Void, String> placed(String id, Workload workload, Map<String, String> threads) {
+        return new WorkerWrapper.Builder<Void, String>()
+                .id(id)
+                .worker((param, allWrappers) -> {
+                    threads.put(id, Thread.currentThread().getName());
+                    return id;
+                })
+                .workload(workload);
+    }
+
+    private static double measure(ExecutorService executorService) throws Exception {
+        int runs = 10;
+        long begin = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            Async.beginWork(2000, executorService, graph());
+        }
+        return (System.nanoTime() - begin) / 1e6 / runs;
+    }
+
+    private static WorkerWrapper<Void, String> graph() {
+        WorkerWrapper<Void, String> end = new WorkerWrapper.Builder<Void, String>()
+                .id("end")
+                .worker((param, allWrappers) -> {
+                    spin(2);
+                    return "done";
+                })
+                .workload(Workload.CPU)
+                .build();
+        WorkerWrapper.Builder<Void, String> start = new WorkerWrapper.Builder<Void, String>()
+                .id("start")
+                .worker((param, allWrappers) -> "start");
+        for (int i = 1; i <= 6; i++) {
+            start.next(new WorkerWrapper.Builder<Void, String>().id("query-" + i).worker(QUERY).next(end).build());
+        }
+        for (int i = 1; i <= 4; i++) {
+            start.next(new WorkerWrapper.Builder<Void, String>().id("score-" + i).worker(SCORE).next(end).build());
+        }
+        return start.build();
+    }
+
+    private static void spin(long millis) {
+        long end = System.nanoTime() + millis * 1_000_000;
+        long x = 0;
+        while (System.nanoTime() < end) {
+            x += x * 31 + 7;
+        }
+        if (x == 42) {
+            System.out.println();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ignored) {
+        }
+    }
+}